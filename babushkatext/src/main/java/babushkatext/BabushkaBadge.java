@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * A lightweight view drawing a single line of Pieces, such as a rating badge or a price tag, on
+ * its own canvas. Unlike {@link BabushkaText}, it builds no Spannable and no text Layout: each
+ * Piece is measured once when displayed, with a Paint shared by every Piece of the same style,
+ * and drawn as a single run. Its text is copied at that time, so a Piece modified since is still
+ * drawn as displayed until the next {@link #display()}.
+ *
+ * <pre>
+ * BabushkaBadge badge = (BabushkaBadge) findViewById(R.id.rating);
+ * badge.addPiece(new BabushkaText.Piece.Builder("  9.5  ")
+ *         .textColor(Color.WHITE)
+ *         .backgroundColor(Color.parseColor("#073680"))
+ *         .build());
+ * badge.addPiece(new BabushkaText.Piece.Builder(" excellent! ")
+ *         .textColor(Color.parseColor("#073680"))
+ *         .backgroundColor(Color.parseColor("#DFF1FE"))
+ *         .style(Typeface.BOLD)
+ *         .build());
+ * badge.display();
+ * </pre>
+ *
+ * Every attribute of a Piece is drawn: text size and color, background color, style, underline,
+ * strike, superscript and subscript. Pieces built without a text size get the badge's own. The
+ * text is drawn left to right and never wraps, so line breaks, bidirectional text and anything
+ * longer than the badge are better shown by a BabushkaText.
+ */
+public class BabushkaBadge extends View {
+
+    private static final int DEFAULT_TEXT_SIZE_SP = 14;
+    private static final int PAINT_CACHE_SIZE = 64;
+
+    // same skew as StyleSpan, for fonts without an italic face
+    private static final float ITALIC_SKEW_X = -0.25f;
+
+    private static final int FLAG_UNDERLINE = 1;
+    private static final int FLAG_STRIKE = 2;
+
+    // the paints of every badge, by style, least recently used first. Only used on the UI thread.
+    private static final Map<PaintKey, TextPaint> sPaints =
+            new LinkedHashMap<PaintKey, TextPaint>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<PaintKey, TextPaint> eldest) {
+                    return size() > PAINT_CACHE_SIZE;
+                }
+            };
+    private static final PaintKey sLookupKey = new PaintKey();
+
+    private final List<Piece> mPieces = new ArrayList<>();
+    private final Paint mBackgroundPaint = new Paint();
+    private float mTextSize;
+
+    // the Pieces as of the last display(), and how each one is drawn
+    private Piece[] mDrawn = new Piece[0];
+    private int[] mModCounts = new int[0];
+    private char[][] mTexts = new char[0][];
+    private int[] mLengths = new int[0];
+    private TextPaint[] mPaints = new TextPaint[0];
+    private float[] mWidths = new float[0];
+    private int[] mShifts = new int[0];
+    private int[] mBackgroundColors = new int[0];
+    private int mDrawnCount;
+    private float mDrawnTextSize;
+
+    // the size of the line, with its top and bottom relative to the baseline
+    private float mLineWidth;
+    private float mLineTop;
+    private float mLineBottom;
+
+    public BabushkaBadge(Context context) {
+        super(context);
+        init();
+    }
+
+    public BabushkaBadge(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public BabushkaBadge(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        mTextSize = DEFAULT_TEXT_SIZE_SP * getResources().getDisplayMetrics().scaledDensity;
+        measureLine();
+    }
+
+    /**
+     * Adds a Piece at the end of the badge.
+     *
+     * @param aPiece the Piece
+     */
+    public void addPiece(Piece aPiece) {
+        mPieces.add(aPiece);
+    }
+
+    /**
+     * Adds a Piece at a specific location.
+     *
+     * @param aPiece the Piece
+     * @param location index at which the Piece is added
+     */
+    public void addPiece(Piece aPiece, int location) {
+        mPieces.add(location, aPiece);
+    }
+
+    /**
+     * Replaces the Piece at a specific location.
+     *
+     * @param location index of the Piece to replace
+     * @param newPiece the Piece taking its place
+     */
+    public void replacePieceAt(int location, Piece newPiece) {
+        mPieces.set(location, newPiece);
+    }
+
+    /**
+     * Removes the Piece at a specific location.
+     *
+     * @param location index of the Piece to remove
+     */
+    public void removePiece(int location) {
+        mPieces.remove(location);
+    }
+
+    /**
+     * @param location index of the Piece
+     * @return the Piece at that location
+     */
+    public Piece getPiece(int location) {
+        return mPieces.get(location);
+    }
+
+    /**
+     * Removes every Piece. Call {@link #display()} to clear the badge.
+     */
+    public void reset() {
+        mPieces.clear();
+    }
+
+    /**
+     * Sets the text size of Pieces built without one.
+     *
+     * @param size the text size, in pixels
+     */
+    public void setTextSize(float size) {
+        mTextSize = size;
+    }
+
+    /**
+     * @return the text size of Pieces built without one, in pixels
+     */
+    public float getTextSize() {
+        return mTextSize;
+    }
+
+    /**
+     * Shows the Pieces added or modified since the last call. Only the Pieces which changed are
+     * measured again, and the badge is only laid out again if its size changed.
+     */
+    public void display() {
+        int count = mPieces.size();
+        ensureCapacity(count);
+
+        boolean sizeChanged = mTextSize != mDrawnTextSize;
+        mDrawnTextSize = mTextSize;
+
+        for(int i = 0; i < count; i++) {
+            Piece aPiece = mPieces.get(i);
+            if(sizeChanged || mDrawn[i] != aPiece || mModCounts[i] != aPiece.getModCount()) {
+                measurePiece(i, aPiece);
+            }
+        }
+        for(int i = count; i < mDrawnCount; i++) {
+            mDrawn[i] = null;
+        }
+        mDrawnCount = count;
+
+        float width = mLineWidth;
+        float height = mLineBottom - mLineTop;
+        measureLine();
+        if(mLineWidth != width || mLineBottom - mLineTop != height) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = (int) Math.ceil(mLineWidth) + getPaddingLeft() + getPaddingRight();
+        int height = (int) Math.ceil(mLineBottom - mLineTop) + getPaddingTop()
+                + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float x = getPaddingLeft();
+        float top = getPaddingTop();
+        float baseline = top - mLineTop;
+        float bottom = baseline + mLineBottom;
+
+        for(int i = 0; i < mDrawnCount; i++) {
+            int length = mLengths[i];
+            if(length == 0) {
+                continue;
+            }
+            float width = mWidths[i];
+            if(mBackgroundColors[i] != -1) {
+                mBackgroundPaint.setColor(mBackgroundColors[i]);
+                canvas.drawRect(x, top, x + width, bottom, mBackgroundPaint);
+            }
+            canvas.drawText(mTexts[i], 0, length, x, baseline + mShifts[i], mPaints[i]);
+            x += width;
+        }
+    }
+
+    /**
+     * Copies the text of a Piece, and works out its paint, width and baseline shift.
+     */
+    private void measurePiece(int i, Piece aPiece) {
+        float size = (aPiece.hasTextSize() ? aPiece.getTextSize() : mTextSize)
+                * aPiece.getTextSizeRelative();
+        int flags = (aPiece.isUnderline() ? FLAG_UNDERLINE : 0)
+                | (aPiece.isStrike() ? FLAG_STRIKE : 0);
+        TextPaint paint = obtainPaint(size, aPiece.getTextColor(), aPiece.getStyle(), flags);
+
+        // like SuperscriptSpan and SubscriptSpan, by half the ascent
+        int shift = 0;
+        if(aPiece.isSuperscript()) {
+            shift += (int) (paint.ascent() / 2);
+        }
+        if(aPiece.isSubscript()) {
+            shift -= (int) (paint.ascent() / 2);
+        }
+
+        CharSequence text = aPiece.getText();
+        int length = text.length();
+        if(mTexts[i] == null || mTexts[i].length < length) {
+            mTexts[i] = new char[length];
+        }
+        TextUtils.getChars(text, 0, length, mTexts[i], 0);
+
+        mDrawn[i] = aPiece;
+        mModCounts[i] = aPiece.getModCount();
+        mLengths[i] = length;
+        mPaints[i] = paint;
+        mWidths[i] = paint.measureText(mTexts[i], 0, length);
+        mShifts[i] = shift;
+        mBackgroundColors[i] = aPiece.getBackgroundColor();
+    }
+
+    /**
+     * Sums up the widths of the Pieces, and finds the highest and lowest points of the line. An
+     * empty badge is as high as a line of its own text size.
+     */
+    private void measureLine() {
+        TextPaint paint = obtainPaint(mTextSize, Color.BLACK, Typeface.NORMAL, 0);
+        float width = 0;
+        float top = paint.ascent();
+        float bottom = paint.descent();
+
+        for(int i = 0; i < mDrawnCount; i++) {
+            if(mLengths[i] == 0) {
+                continue;
+            }
+            width += mWidths[i];
+            top = Math.min(top, mPaints[i].ascent() + mShifts[i]);
+            bottom = Math.max(bottom, mPaints[i].descent() + mShifts[i]);
+        }
+
+        mLineWidth = width;
+        mLineTop = top;
+        mLineBottom = bottom;
+    }
+
+    private void ensureCapacity(int count) {
+        if(count <= mDrawn.length) {
+            return;
+        }
+        int capacity = Math.max(count, mDrawn.length * 2);
+        Piece[] drawn = new Piece[capacity];
+        System.arraycopy(mDrawn, 0, drawn, 0, mDrawnCount);
+        mDrawn = drawn;
+
+        int[] modCounts = new int[capacity];
+        System.arraycopy(mModCounts, 0, modCounts, 0, mDrawnCount);
+        mModCounts = modCounts;
+
+        char[][] texts = new char[capacity][];
+        System.arraycopy(mTexts, 0, texts, 0, mDrawnCount);
+        mTexts = texts;
+
+        int[] lengths = new int[capacity];
+        System.arraycopy(mLengths, 0, lengths, 0, mDrawnCount);
+        mLengths = lengths;
+
+        TextPaint[] paints = new TextPaint[capacity];
+        System.arraycopy(mPaints, 0, paints, 0, mDrawnCount);
+        mPaints = paints;
+
+        float[] widths = new float[capacity];
+        System.arraycopy(mWidths, 0, widths, 0, mDrawnCount);
+        mWidths = widths;
+
+        int[] shifts = new int[capacity];
+        System.arraycopy(mShifts, 0, shifts, 0, mDrawnCount);
+        mShifts = shifts;
+
+        int[] backgroundColors = new int[capacity];
+        System.arraycopy(mBackgroundColors, 0, backgroundColors, 0, mDrawnCount);
+        mBackgroundColors = backgroundColors;
+    }
+
+    /**
+     * @return the shared paint drawing text of this style, created the first time it's needed
+     */
+    private static TextPaint obtainPaint(float size, int color, int style, int flags) {
+        sLookupKey.set(size, color, style, flags);
+        TextPaint paint = sPaints.get(sLookupKey);
+        if(paint != null) {
+            return paint;
+        }
+
+        paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(size);
+        paint.setColor(color);
+        paint.setUnderlineText((flags & FLAG_UNDERLINE) != 0);
+        paint.setStrikeThruText((flags & FLAG_STRIKE) != 0);
+
+        // fake what the font lacks, as StyleSpan does
+        Typeface typeface = Typeface.defaultFromStyle(style);
+        int fake = style & ~typeface.getStyle();
+        paint.setFakeBoldText((fake & Typeface.BOLD) != 0);
+        paint.setTextSkewX((fake & Typeface.ITALIC) != 0 ? ITALIC_SKEW_X : 0);
+        paint.setTypeface(typeface);
+
+        PaintKey key = new PaintKey();
+        key.set(size, color, style, flags);
+        sPaints.put(key, paint);
+        return paint;
+    }
+
+    /**
+     * The style of a shared paint.
+     */
+    private static final class PaintKey {
+
+        private float mSize;
+        private int mColor;
+        private int mStyle;
+        private int mFlags;
+
+        void set(float size, int color, int style, int flags) {
+            mSize = size;
+            mColor = color;
+            mStyle = style;
+            mFlags = flags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof PaintKey)) {
+                return false;
+            }
+            PaintKey other = (PaintKey) o;
+            return Float.compare(mSize, other.mSize) == 0 && mColor == other.mColor
+                    && mStyle == other.mStyle && mFlags == other.mFlags;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Float.floatToIntBits(mSize);
+            hash = 31 * hash + mColor;
+            hash = 31 * hash + mStyle;
+            return 31 * hash + mFlags;
+        }
+    }
+}
@@ -20,22 +20,33 @@ package babushkatext;
 import android.content.Context;
 import android.graphics.Color;
 import android.graphics.Typeface;
+import android.text.Editable;
+import android.text.Layout;
 import android.text.Spannable;
-import android.text.SpannableString;
-import android.text.style.AbsoluteSizeSpan;
-import android.text.style.BackgroundColorSpan;
-import android.text.style.ForegroundColorSpan;
-import android.text.style.RelativeSizeSpan;
-import android.text.style.StrikethroughSpan;
-import android.text.style.StyleSpan;
-import android.text.style.SubscriptSpan;
-import android.text.style.SuperscriptSpan;
-import android.text.style.UnderlineSpan;
+import android.text.SpannableStringBuilder;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.text.style.MetricAffectingSpan;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.widget.TextView;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * BabushkaText is a TextView which lets you customize the styling of parts of your text via
@@ -49,181 +60,2398 @@ import java.util.List;
  */
 public class BabushkaText extends TextView {
 
-    // some default params
-    private static int DEFAULT_ABSOLUTE_TEXT_SIZE;
-    private static float DEFAULT_RELATIVE_TEXT_SIZE = 1;
+    // how many times per second streamed updates are displayed, unless set otherwise
+    private static final int DEFAULT_MAX_STREAM_RATE = 30;
+
+    // the color of search highlights, unless set otherwise
+    private static final int DEFAULT_HIGHLIGHT_COLOR = 0xFFFFEB3B;
 
     private List<Piece> mPieces;
 
+    // the styled text currently shown, edited in place by display()
+    private SpannableStringBuilder mBuffer;
+
+    // what each Piece looked like when it was last written into mBuffer, in display order
+    private List<DisplayedPiece> mDisplayed;
+
+    // true when Pieces were inserted, removed or replaced since the last display()
+    private boolean mStructureChanged;
+
+    // spans currently applied to mBuffer, and scratch space to plan the next ones
+    private Composer mComposer;
+    private SpanPlan mApplied;
+    private SpanPlan mPlanned;
+
+    // where each displayed Piece starts, and which Pieces had their text edited by an update
+    private int[] mOffsets;
+    private boolean[] mTextChanged;
+
+    // Pieces which have a key, by key; their position is kept in Piece.index
+    private Map<String, Piece> mPiecesByKey;
+    // false once a Piece was inserted or removed before others, until they are numbered again
+    private boolean mIndicesValid;
+
+    // the Pieces in large document mode, also referenced by mPieces; null otherwise
+    private PieceTree mTree;
+    private List<PieceTree.Node> mTreePending;
+    private int mTreeSpanCount;
+
+    // in windowed mode, the number of Pieces materialized from mWindowStart on, and how close to
+    // the edge of the materialized text scrolling pages more in; mWindowSize is 0 otherwise
+    private int mWindowSize;
+    private int mWindowMargin;
+    private int mWindowStart;
+    private boolean mPaging;
+
+    // span instances applied to mBuffer; a shared span can only style one range of it
+    private Set<Object> mSpansInUse;
+
+    // the parameters last returned by getPrecomputeParams(), as long as the view still matches
+    private PrecomputedPieces.Params mPrecomputeParams;
+
+    // layout requests caused by edits which keep the text geometry are swallowed
+    private TextPaint mMeasurePaint;
+    private boolean mBlockLayoutRequests;
+    private boolean mLayoutRequestBlocked;
+    private boolean mLayoutRequested;
+    private int mAvoidedRelayoutCount;
+
+    // frame-coalesced display(), see beginBatch() and setAutoDisplay()
+    private Runnable mDisplayRunnable;
+    private boolean mDisplayScheduled;
+    private boolean mDisplayPending;
+    private boolean mAutoDisplay;
+    private int mBatchDepth;
+
+    // streams of updates pushed from any thread, displayed at most every mStreamInterval ms
+    private List<PieceStream> mStreams;
+    private Handler mHandler;
+    private Runnable mStreamDrainRunnable;
+    private AtomicBoolean mStreamDrainScheduled;
+    private volatile long mStreamInterval;
+    private volatile long mLastStreamDrain;
+    // counts of the streams closed so far
+    private AtomicInteger mClosedStreamsReceived;
+    private AtomicInteger mClosedStreamsApplied;
+
+    // a list modified from any thread, whose snapshots are displayed along with the streams
+    private ConcurrentPieces mConcurrentPieces;
+
+    // packed Pieces displayed instead of the Pieces of this view, see setPackedPieces()
+    private PackedPieces mPacked;
+
+    // the template bound last, while its text is displayed, and the values it shows
+    private PieceTemplate mTemplate;
+    private SpanPlan mTemplatePlan;
+    private String[] mTemplateValues;
+
+    // instrumentation of display() and binds, see DisplayStats. The written counts are kept all
+    // along, and only read while recording.
+    private DisplayListener mDisplayListener;
+    private DisplayStats mDisplayStats;
+    private DisplayEvent mDisplayEvent;
+    private int mCharactersWritten;
+    private int mSpansWritten;
+
+    // set while a display or a bind is recorded, with the counts it started from
+    private boolean mRecording;
+    private long mRecordStart;
+    private int mRecordCharacters;
+    private int mRecordSpans;
+    private int mRecordAvoidedRelayouts;
+
+    // the number of spans of a text shown straight from a Composition, whose spans aren't
+    // tracked, such as packed Pieces; -1 otherwise
+    private int mComposedSpanCount = -1;
+
+    // search highlights drawn over the text, refreshed on the next frame once it changed
+    private HighlightOverlay mHighlights;
+    private Runnable mHighlightRunnable;
+    private boolean mHighlightScheduled;
+
+    /**
+     * Create a new instance of a this class
+     * @param context
+     */
+    public BabushkaText(Context context) {
+        super(context);
+        init();
+    }
+
+    public BabushkaText(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public BabushkaText(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        mPieces = new ArrayList<>();
+        mPiecesByKey = new HashMap<>();
+        mIndicesValid = true;
+        mTreePending = new ArrayList<>();
+        mDisplayed = new ArrayList<>();
+        mStructureChanged = true;
+        mComposer = new Composer();
+        mApplied = new SpanPlan();
+        mPlanned = new SpanPlan();
+        mOffsets = new int[1];
+        mTextChanged = new boolean[1];
+        mSpansInUse = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        mMeasurePaint = new TextPaint();
+        Piece.DEFAULT_ABSOLUTE_TEXT_SIZE = (int) getTextSize();
+        mDisplayRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mDisplayScheduled = false;
+                display();
+            }
+        };
+
+        mStreams = new CopyOnWriteArrayList<>();
+        mHandler = new Handler(Looper.getMainLooper());
+        mStreamDrainScheduled = new AtomicBoolean();
+        mClosedStreamsReceived = new AtomicInteger();
+        mClosedStreamsApplied = new AtomicInteger();
+        mStreamInterval = 1000 / DEFAULT_MAX_STREAM_RATE;
+        mStreamDrainRunnable = new Runnable() {
+            @Override
+            public void run() {
+                drainStreams();
+            }
+        };
+
+        // hand our buffer to the TextView as is, instead of letting it make an editable copy
+        setEditableFactory(new Editable.Factory() {
+            @Override
+            public Editable newEditable(CharSequence source) {
+                if(source == mBuffer) {
+                    return mBuffer;
+                }
+                return super.newEditable(source);
+            }
+        });
+    }
+
+    /**
+     * Use this method to add a {@link babushkatext.BabushkaText.Piece} to a BabushkaText.
+     * Each {@link babushkatext.BabushkaText.Piece } is added sequentially, so the
+     * order you call this method matters.
+     *
+     * @param aPiece the Piece
+     */
+    public void addPiece(Piece aPiece) {
+        checkKey(aPiece, null);
+        aPiece.index = mPieces.size();
+        mPieces.add(aPiece);
+        putKey(aPiece);
+        aPiece.owner = this;
+        onPiecesChanged();
+    }
+
+    /**
+     * Adds a Piece at this specific location. The underlying data structure is a
+     * {@link java.util.List}, so expect the same type of behaviour.
+     *
+     * @param aPiece the Piece to add.
+     * @param location the index at which to add.
+     */
+    public void addPiece(Piece aPiece, int location) {
+        checkKey(aPiece, null);
+        if(location != mPieces.size()) {
+            markStructureChanged();
+            mIndicesValid = false;
+        }
+        aPiece.index = location;
+        mPieces.add(location, aPiece);
+        putKey(aPiece);
+        aPiece.owner = this;
+        onPiecesChanged();
+    }
+
+    /**
+     * Replaces the Piece at the specified location with this new Piece. The underlying data
+     * structure is a {@link java.util.List}, so expect the same type of behaviour.
+     *
+     * @param newPiece the Piece to insert.
+     * @param location the index at which to insert.
+     */
+    public void replacePieceAt(int location, Piece newPiece) {
+        checkKey(newPiece, mPieces.get(location));
+        Piece oldPiece = mPieces.set(location, newPiece);
+        removeKey(oldPiece);
+        newPiece.index = location;
+        putKey(newPiece);
+        release(oldPiece);
+        newPiece.owner = this;
+        markStructureChanged();
+        onPiecesChanged();
+    }
+
+    /**
+     * Removes the Piece at this specified location. The underlying data structure is a
+     * {@link java.util.List}, so expect the same type of behaviour.
+     *
+     * @param location the index of the Piece to remove
+     */
+    public void removePiece(int location) {
+        if(location != mPieces.size() - 1) {
+            mIndicesValid = false;
+        }
+        Piece oldPiece = mPieces.remove(location);
+        removeKey(oldPiece);
+        release(oldPiece);
+        markStructureChanged();
+        onPiecesChanged();
+    }
+
+    /**
+     * Pieces were inserted, removed or replaced before the end: the whole text must be built
+     * again, unless the tree of the large document mode displays the change in place.
+     */
+    private void markStructureChanged() {
+        if(mTree == null) {
+            mStructureChanged = true;
+        }
+    }
+
+    /**
+     * Turns the large document mode on or off. Meant for views holding thousands of Pieces, such
+     * as chat transcripts or logs, it keeps the Pieces in a balanced tree which also indexes where
+     * their text starts. Inserting, removing or modifying a Piece anywhere then costs O(log n) in
+     * the number of Pieces, both to do and to display.
+     *
+     * In exchange, each Piece is styled by spans of its own: neighbouring Pieces of the same style
+     * aren't merged into a single span.
+     *
+     * @param enabled true to turn the mode on
+     */
+    public void setLargeDocumentMode(boolean enabled) {
+        if(enabled == (mTree != null)) {
+            return;
+        }
+        if(enabled) {
+            mTree = new PieceTree(mPieces);
+            mPieces = mTree;
+        } else {
+            mTree.detach();
+            mPieces = new ArrayList<>(mTree);
+            mTree = null;
+            mWindowSize = 0;
+        }
+        mIndicesValid = false;
+        mStructureChanged = true;
+        onPiecesChanged();
+    }
+
+    /**
+     * @return true if this view is in large document mode, see
+     * {@link #setLargeDocumentMode(boolean)}
+     */
+    public boolean isLargeDocumentMode() {
+        return mTree != null;
+    }
+
+    /**
+     * Turns the windowed mode on or off. In this mode, only a window of consecutive Pieces is
+     * materialized into the text of the TextView, so layout and memory costs depend on the size
+     * of the window rather than on the size of the whole document. The window pages through the
+     * Pieces as this view scrolls, see {@link #setMovementMethod(android.text.method.MovementMethod)},
+     * or when {@link #scrollToPiece(int)} is called.
+     *
+     * The windowed mode implies the large document mode, which is turned on if needed.
+     *
+     * @param windowSize the number of Pieces materialized at once, enough to fill the view plus
+     *                   both margins, or 0 to materialize them all again
+     * @param margin the distance to the edge of the materialized text, in pixels, at which
+     *               scrolling pages more Pieces in
+     */
+    public void setWindowedMode(int windowSize, int margin) {
+        if(windowSize < 0 || margin < 0) {
+            throw new IllegalArgumentException("windowSize and margin must not be negative");
+        }
+        setLargeDocumentMode(true);
+        if(windowSize != mWindowSize) {
+            // Pieces left out of the old window are only paged back in by a rebuild
+            mStructureChanged = true;
+        }
+        mWindowSize = windowSize;
+        mWindowMargin = margin;
+        onPiecesChanged();
+    }
+
+    /**
+     * @return the position of the first Piece materialized in windowed mode, or 0 when they are
+     * all materialized
+     */
+    public int getWindowStart() {
+        return mWindowSize > 0 ? mWindowStart : 0;
+    }
+
+    /**
+     * @return the position after the last Piece materialized in windowed mode, or the number of
+     * Pieces when they are all materialized
+     */
+    public int getWindowEnd() {
+        if(mWindowSize == 0) {
+            return mPieces.size();
+        }
+        return Math.min(mPieces.size(), mWindowStart + mWindowSize);
+    }
+
+    /**
+     * Moves the window so it holds this Piece and displays it, then scrolls to the Piece. Only
+     * useful in windowed mode.
+     *
+     * @param location the position of the Piece
+     */
+    public void scrollToPiece(int location) {
+        if(mWindowSize > 0 && (location < mWindowStart || location >= getWindowEnd())) {
+            moveWindow(location - mWindowSize / 2);
+        } else {
+            display();
+        }
+
+        Layout layout = getLayout();
+        PieceTree.Node node = mTree != null ? mPieces.get(location).node : null;
+        if(layout != null && node != null && node.displayed) {
+            scrollTo(getScrollX(), layout.getLineTop(layout.getLineForOffset(mTree.offsetOf(node))));
+        }
+    }
+
+    @Override
+    protected void onScrollChanged(int horiz, int vert, int oldHoriz, int oldVert) {
+        super.onScrollChanged(horiz, vert, oldHoriz, oldVert);
+        if(mWindowSize > 0 && !mPaging) {
+            pageOnScroll();
+        }
+    }
+
+    /**
+     * Pages Pieces in when scrolling gets close to either edge of the materialized text.
+     */
+    private void pageOnScroll() {
+        Layout layout = getLayout();
+        if(layout == null || mBuffer == null || getText() != mBuffer) {
+            return;
+        }
+        int step = Math.max(1, mWindowSize / 4);
+        int top = getScrollY();
+        int bottom = top + getHeight();
+        if(top < mWindowMargin && mWindowStart > 0) {
+            moveWindow(mWindowStart - step);
+        } else if(bottom > layout.getHeight() - mWindowMargin
+                && getWindowEnd() < mPieces.size()) {
+            moveWindow(mWindowStart + step);
+        }
+    }
+
+    /**
+     * Moves the window and displays it, scrolling so that the Pieces shown in both the old and
+     * the new window don't move on screen.
+     */
+    private void moveWindow(int windowStart) {
+        int oldStart = mWindowStart;
+        int oldEnd = getWindowEnd();
+        mWindowStart = windowStart;
+        clampWindow();
+
+        Piece anchor = null;
+        int anchorTop = -1;
+        int anchorIndex = Math.max(oldStart, mWindowStart);
+        if(anchorIndex < Math.min(oldEnd, getWindowEnd())) {
+            anchor = mPieces.get(anchorIndex);
+            anchorTop = getPieceTop(anchor);
+        }
+
+        mPaging = true;
+        try {
+            display();
+            if(anchorTop >= 0) {
+                int newTop = getPieceTop(anchor);
+                if(newTop >= 0) {
+                    scrollBy(0, newTop - anchorTop);
+                }
+            }
+        } finally {
+            mPaging = false;
+        }
+    }
+
+    /**
+     * @return the top of the first line of a displayed Piece, in pixels, or -1 if unknown
+     */
+    private int getPieceTop(Piece aPiece) {
+        Layout layout = getLayout();
+        if(layout == null || aPiece.node == null || !aPiece.node.displayed
+                || getText() != mBuffer) {
+            return -1;
+        }
+        return layout.getLineTop(layout.getLineForOffset(mTree.offsetOf(aPiece.node)));
+    }
+
+    private void clampWindow() {
+        mWindowStart = Math.max(0, Math.min(mWindowStart, mPieces.size() - mWindowSize));
+    }
+
+    /**
+     * Get a specific {@link babushkatext.BabushkaText.Piece} in position index.
+     *
+     * @param location position of Piece (0 based)
+     * @return Piece o null if invalid index
+     */
+    public Piece getPiece(int location) {
+        if(location >= 0 && location < mPieces.size()) {
+            return mPieces.get(location);
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the Piece with this key, see {@link Piece.Builder#key(String)}. Its text and color can
+     * then be modified as usual, without knowing where it is.
+     *
+     * @param key the key of the Piece
+     * @return the Piece, or null if none has this key
+     */
+    public Piece getPiece(String key) {
+        return mPiecesByKey.get(key);
+    }
+
+    /**
+     * @param key the key of a Piece
+     * @return the position of the Piece with this key, or -1 if none has it
+     */
+    public int indexOfPiece(String key) {
+        Piece aPiece = mPiecesByKey.get(key);
+        if(aPiece == null) {
+            return -1;
+        }
+        if(mTree != null) {
+            return mTree.indexOf(aPiece.node);
+        }
+        if(!mIndicesValid) {
+            for(int i = 0; i < mPieces.size(); i++) {
+                mPieces.get(i).index = i;
+            }
+            mIndicesValid = true;
+        }
+        return aPiece.index;
+    }
+
+    /**
+     * Replaces the Piece with this key with a new Piece, at the same position.
+     *
+     * @param key the key of the Piece to replace
+     * @param newPiece the Piece to insert
+     * @return false if no Piece has this key
+     */
+    public boolean replacePiece(String key, Piece newPiece) {
+        int location = indexOfPiece(key);
+        if(location < 0) {
+            return false;
+        }
+        replacePieceAt(location, newPiece);
+        return true;
+    }
+
+    /**
+     * Removes the Piece with this key.
+     *
+     * @param key the key of the Piece to remove
+     * @return false if no Piece has this key
+     */
+    public boolean removePiece(String key) {
+        int location = indexOfPiece(key);
+        if(location < 0) {
+            return false;
+        }
+        removePiece(location);
+        return true;
+    }
+
+    /**
+     * @param key the key of a Piece
+     * @return where the text of the Piece with this key starts in the displayed text, or -1 if
+     * it isn't displayed yet. Offsets are those of the last display().
+     */
+    public int getPieceStart(String key) {
+        if(mTree != null) {
+            Piece aPiece = mPiecesByKey.get(key);
+            if(aPiece == null || !aPiece.node.displayed || mStructureChanged) {
+                return -1;
+            }
+            return mTree.offsetOf(aPiece.node);
+        }
+        int location = indexOfPiece(key);
+        if(location < 0 || location >= mDisplayed.size() || mStructureChanged) {
+            return -1;
+        }
+        return mOffsets[location];
+    }
+
+    /**
+     * Throws if a Piece about to be added has the key of another Piece of this view.
+     *
+     * @param replaced the Piece it replaces, whose key is free to take, or null
+     */
+    private void checkKey(Piece aPiece, Piece replaced) {
+        if(aPiece.key == null) {
+            return;
+        }
+        Piece owner = mPiecesByKey.get(aPiece.key);
+        if(owner != null && owner != replaced) {
+            throw new IllegalArgumentException("Duplicate Piece key " + aPiece.key);
+        }
+    }
+
+    private void putKey(Piece aPiece) {
+        if(aPiece.key != null) {
+            mPiecesByKey.put(aPiece.key, aPiece);
+        }
+    }
+
+    private void removeKey(Piece aPiece) {
+        if(aPiece.key != null && mPiecesByKey.get(aPiece.key) == aPiece) {
+            mPiecesByKey.remove(aPiece.key);
+        }
+    }
+
+    /**
+     * Indexes the keys of a new list of Pieces.
+     *
+     * @throws IllegalArgumentException if two Pieces have the same key
+     */
+    private static Map<String, Piece> indexKeys(List<Piece> pieces) {
+        Map<String, Piece> piecesByKey = new HashMap<>();
+        for(int i = 0; i < pieces.size(); i++) {
+            Piece aPiece = pieces.get(i);
+            if(aPiece.key != null && piecesByKey.put(aPiece.key, aPiece) != null) {
+                throw new IllegalArgumentException("Duplicate Piece key " + aPiece.key);
+            }
+        }
+        return piecesByKey;
+    }
+
+    /**
+     * Call this method when you're done adding {@link babushkatext.BabushkaText.Piece}s
+     * and want this TextView to display the final, styled version of it's String contents.
+     *
+     * You MUST also call this method whenever you make a modification to the text of a Piece that
+     * has already been displayed.
+     *
+     * When the only changes since the last call are modified or appended Pieces, the displayed
+     * text is edited in place: only the ranges of those Pieces are replaced, and only the spans
+     * whose runs changed are added, moved or removed. Edits which keep the length and measured
+     * width of a Piece only redraw the view, without laying it out again.
+     */
+    public void display() {
+        DisplayStats.beginSection("BabushkaText#display");
+        boolean recording = beginRecording();
+        try {
+            int kind = performDisplay();
+            if(recording) {
+                endRecording(kind, mPacked != null ? mPacked.size() : mPieces.size());
+            }
+        } finally {
+            if(recording) {
+                mRecording = false;
+            }
+            DisplayStats.endSection();
+        }
+    }
+
+    /**
+     * @return how the Pieces were displayed, one of the kinds of {@link DisplayEvent}
+     */
+    private int performDisplay() {
+        cancelScheduledDisplay();
+
+        if(mPacked != null) {
+            showPacked();
+            return DisplayEvent.PACKED;
+        } else if(mTree != null) {
+            if(mBuffer == null || mStructureChanged || getText() != mBuffer
+                    || updateComposerDefaults()) {
+                rebuildTree();
+                return DisplayEvent.REBUILD_LARGE;
+            }
+            updateTree();
+            return DisplayEvent.UPDATE_LARGE;
+        } else if(mBuffer == null || mStructureChanged || getText() != mBuffer
+                || updateComposerDefaults()) {
+            // spans were planned against the text size and color of the view, which changed
+            rebuild();
+            return DisplayEvent.REBUILD;
+        }
+        update(false);
+        return DisplayEvent.UPDATE;
+    }
+
+    /**
+     * Starts recording a display or a bind, unless nothing records them or one is being recorded
+     * already, such as a bind displaying the Pieces it shows.
+     *
+     * @return true if the work must be ended with {@link #endRecording(int, int)}, and
+     * mRecording cleared even if it fails
+     */
+    private boolean beginRecording() {
+        if(mRecording || (mDisplayListener == null && !DisplayStats.isRecording())) {
+            return false;
+        }
+        mRecording = true;
+        mRecordCharacters = mCharactersWritten;
+        mRecordSpans = mSpansWritten;
+        mRecordAvoidedRelayouts = mAvoidedRelayoutCount;
+        mLayoutRequested = false;
+        mRecordStart = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Records what the work since {@link #beginRecording()} took in the stats of this view and
+     * the global ones, and tells the listeners.
+     *
+     * @param kind how the Pieces were displayed, one of the kinds of {@link DisplayEvent}
+     * @param pieceCount the number of Pieces shown
+     */
+    private void endRecording(int kind, int pieceCount) {
+        long duration = System.nanoTime() - mRecordStart;
+        // listeners may display this view again
+        mRecording = false;
+
+        DisplayEvent event = mDisplayEvent;
+        if(event == null) {
+            event = new DisplayEvent();
+            event.view = this;
+            mDisplayEvent = event;
+        }
+        event.durationNanos = duration;
+        event.kind = kind;
+        event.pieceCount = pieceCount;
+        event.spanCount = getSpanCount();
+        event.charactersWritten = mCharactersWritten - mRecordCharacters;
+        event.spansWritten = mSpansWritten - mRecordSpans;
+        event.relayout = mLayoutRequested;
+        event.relayoutAvoided = mAvoidedRelayoutCount != mRecordAvoidedRelayouts;
+
+        getDisplayStats().record(event);
+        if(DisplayStats.isEnabled()) {
+            DisplayStats.getGlobal().record(event);
+        }
+        if(mDisplayListener != null) {
+            mDisplayListener.onDisplay(event);
+        }
+        DisplayListener listener = DisplayStats.getListener();
+        if(listener != null) {
+            listener.onDisplay(event);
+        }
+    }
+
+    /**
+     * Sets a listener told about every display() of this view, such as how long it took.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setDisplayListener(DisplayListener listener) {
+        mDisplayListener = listener;
+    }
+
+    /**
+     * @return the stats of this view, recorded while {@link DisplayStats} is enabled or a
+     * listener is set
+     */
+    public DisplayStats getDisplayStats() {
+        if(mDisplayStats == null) {
+            mDisplayStats = new DisplayStats();
+        }
+        return mDisplayStats;
+    }
+
+    private void cancelScheduledDisplay() {
+        if(mDisplayScheduled) {
+            removeCallbacks(mDisplayRunnable);
+            mDisplayScheduled = false;
+        }
+        mDisplayPending = false;
+    }
+
+    /**
+     * Generates the styled text from scratch and hands it to the TextView.
+     */
+    private void rebuild() {
+        updateComposerDefaults();
+        DisplayStats.beginSection("BabushkaText#compose");
+        Composition composition = mComposer.compose(mPieces);
+        SpannableStringBuilder buffer = new SpannableStringBuilder(composition);
+        mCharactersWritten += buffer.length();
+        ensureCapacity(mPieces.size());
+        composition.copyPieceOffsetsTo(mOffsets);
+        DisplayStats.endSection();
+
+        // apply spans
+        DisplayStats.beginSection("BabushkaText#applySpans");
+        composition.copyRunsTo(mApplied);
+        mSpansInUse.clear();
+        for(int run = 0; run < mApplied.size(); run++) {
+            Object span = obtainSpan(mApplied.kindAt(run), mApplied.valueAt(run));
+            mApplied.setSpanAt(run, span);
+            setRunSpan(buffer, mApplied, run);
+        }
+        DisplayStats.endSection();
+
+        mDisplayed.clear();
+        for(int i = 0; i < mPieces.size(); i++) {
+            mDisplayed.add(new DisplayedPiece(mPieces.get(i)));
+        }
+        show(buffer);
+    }
+
+    /**
+     * Composes the packed Pieces from scratch and hands them to the TextView.
+     */
+    private void showPacked() {
+        updateComposerDefaults();
+        DisplayStats.beginSection("BabushkaText#compose");
+        Composition composition = mComposer.compose(mPacked);
+        DisplayStats.endSection();
+        showComposition(composition);
+    }
+
+    /**
+     * Hands a composed text to the TextView, styled by spans which aren't tracked.
+     */
+    private void showComposition(Composition composition) {
+        SpannableStringBuilder buffer = new SpannableStringBuilder(composition);
+        mCharactersWritten += buffer.length();
+
+        DisplayStats.beginSection("BabushkaText#applySpans");
+        mSpansInUse.clear();
+        for(int run = 0; run < composition.getRunCount(); run++) {
+            int kind = composition.getRunKind(run);
+            Object span = obtainSpan(kind, composition.getRunValue(run));
+            setSpan(buffer, span, kind, composition.getRunStart(run), composition.getRunEnd(run));
+        }
+        DisplayStats.endSection();
+        show(buffer);
+        mComposedSpanCount = composition.getRunCount();
+
+        // none of the spans are tracked, so Pieces displayed after these start from scratch
+        mStructureChanged = true;
+    }
+
+    /**
+     * Hands a freshly built buffer to the TextView.
+     */
+    private void show(SpannableStringBuilder buffer) {
+        mBuffer = buffer;
+        mStructureChanged = false;
+        mTemplate = null;
+        mComposedSpanCount = -1;
+
+        // set the styled text
+        DisplayStats.beginSection("BabushkaText#setText");
+        setText(mBuffer, BufferType.EDITABLE);
+        DisplayStats.endSection();
+        onTextReplaced();
+    }
+
+    /**
+     * Brings the displayed text up to date by replacing the text of the Pieces which changed since
+     * they were last displayed, and appending those which were added at the end. The buffer moves
+     * the spans after an edited range by itself; spans are only touched when their run changed or
+     * covers an edited Piece.
+     *
+     * @param structureChanged true if Pieces were inserted or removed in place, so the spans must
+     *                         be reconciled even if no Piece changed
+     */
+    private void update(boolean structureChanged) {
+        int count = mPieces.size();
+        int displayedCount = mDisplayed.size();
+        boolean changed = structureChanged;
+        int cursor = 0;
+        ensureCapacity(count);
+        mLayoutRequestBlocked = false;
+        mLayoutRequested = false;
+
+        for(int i = 0; i < count; i++) {
+            Piece aPiece = mPieces.get(i);
+            mOffsets[i] = cursor;
+            mTextChanged[i] = false;
+
+            if(i < displayedCount) {
+                DisplayedPiece displayed = mDisplayed.get(i);
+                if(displayed.inserted) {
+                    // inserted by setPieces(), the spans around it may need to grow
+                    displayed.inserted = false;
+                    mTextChanged[i] = true;
+                }
+                if(displayed.modCount != aPiece.modCount) {
+                    int newLength = aPiece.text.length();
+
+                    // a Piece whose color changed keeps its characters
+                    if(newLength != displayed.length
+                            || !TextUtils.regionMatches(mBuffer, cursor, aPiece.text, 0, newLength)) {
+                        // the TextView doesn't need to be laid out again if the new text takes
+                        // exactly the room of the old one
+                        mBlockLayoutRequests = keepsGeometry(aPiece, cursor, displayed.length);
+                        mBuffer.replace(cursor, cursor + displayed.length, aPiece.text);
+                        mBlockLayoutRequests = false;
+                        mCharactersWritten += newLength;
+                        onTextEdited(cursor, displayed.length, newLength);
+                        displayed.length = newLength;
+                        mTextChanged[i] = true;
+                    }
+                    displayed.modCount = aPiece.modCount;
+                    changed = true;
+                }
+                cursor += displayed.length;
+            } else {
+                mBuffer.append(aPiece.text);
+                mCharactersWritten += aPiece.text.length();
+                onTextEdited(mBuffer.length() - aPiece.text.length(), 0, aPiece.text.length());
+                mDisplayed.add(new DisplayedPiece(aPiece));
+                mTextChanged[i] = true;
+                changed = true;
+                cursor += aPiece.text.length();
+            }
+        }
+        mOffsets[count] = cursor;
+
+        if(changed) {
+            updateComposerDefaults();
+            DisplayStats.beginSection("BabushkaText#compose");
+            mComposer.plan(mPieces, mPlanned);
+            DisplayStats.endSection();
+            DisplayStats.beginSection("BabushkaText#applySpans");
+            reconcileSpans();
+            DisplayStats.endSection();
+        }
+
+        if(mLayoutRequestBlocked && !mLayoutRequested) {
+            mAvoidedRelayoutCount++;
+            invalidate();
+        }
+    }
+
+    /**
+     * Generates the styled text from scratch in large document mode. In windowed mode, only the
+     * Pieces of the window are materialized.
+     */
+    private void rebuildTree() {
+        updateComposerDefaults();
+        mTree.purge(mTreePending);
+        clampWindow();
+        int windowEnd = getWindowEnd();
+
+        SpannableStringBuilder buffer = new SpannableStringBuilder();
+        int index = 0;
+        for(PieceTree.Node node = mTree.first(); node != null; node = PieceTree.next(node)) {
+            node.displayed = mWindowSize == 0 || (index >= mWindowStart && index < windowEnd);
+            node.displayedLength = node.displayed ? node.piece.text.length() : 0;
+            if(node.displayed) {
+                buffer.append(node.piece.text);
+            }
+            // spans of the previous buffer
+            node.spans = null;
+            index++;
+        }
+        mTree.updateAll();
+        mCharactersWritten += buffer.length();
+
+        DisplayStats.beginSection("BabushkaText#applySpans");
+        mApplied.clear();
+        mSpansInUse.clear();
+        mDisplayed.clear();
+        mTreeSpanCount = 0;
+        int start = 0;
+        for(PieceTree.Node node = mTree.first(); node != null; node = PieceTree.next(node)) {
+            applyPieceSpans(buffer, node, start);
+            start += node.displayedLength;
+        }
+        DisplayStats.endSection();
+
+        show(buffer);
+    }
+
+    /**
+     * Displays the Pieces inserted, removed or modified since the last call in large document
+     * mode. Each one costs O(log n) to locate, plus the edit of its own text and spans. In
+     * windowed mode, Pieces which left the window are paged out and those which entered it are
+     * paged in.
+     */
+    private void updateTree() {
+        List<PieceTree.Node> pending = mTreePending;
+        mTree.takePending(pending);
+        mLayoutRequestBlocked = false;
+        mLayoutRequested = false;
+
+        // removed Pieces go first, so text is only inserted next to displayed Pieces
+        for(int i = 0; i < pending.size(); i++) {
+            PieceTree.Node node = pending.get(i);
+            if(!node.live) {
+                pageOut(node);
+                mTree.unlink(node);
+            }
+        }
+
+        if(mWindowSize > 0) {
+            clampWindow();
+            int windowEnd = getWindowEnd();
+            PieceTree.Node node;
+            while((node = mTree.firstDisplayed()) != null && mTree.indexOf(node) < mWindowStart) {
+                pageOut(node);
+            }
+            while((node = mTree.lastDisplayed()) != null && mTree.indexOf(node) >= windowEnd) {
+                pageOut(node);
+            }
+        }
+
+        // Pieces outside the window were paged out, those inside are paged in below
+        for(int i = 0; i < pending.size(); i++) {
+            PieceTree.Node node = pending.get(i);
+            if(node.live && (mWindowSize == 0 || node.displayed)) {
+                render(node);
+            }
+        }
+        pending.clear();
+
+        if(mWindowSize > 0) {
+            PieceTree.Node node = mWindowStart < getWindowEnd() ? mTree.nodeAt(mWindowStart) : null;
+            for(int i = mWindowStart; i < getWindowEnd(); i++, node = nextLive(node)) {
+                if(!node.displayed) {
+                    render(node);
+                }
+            }
+        }
+
+        if(mLayoutRequestBlocked && !mLayoutRequested) {
+            mAvoidedRelayoutCount++;
+            invalidate();
+        }
+    }
+
+    /**
+     * Writes the current text and spans of a Piece into the displayed text, in large document
+     * mode.
+     */
+    private void render(PieceTree.Node node) {
+        Piece aPiece = node.piece;
+        int start = mTree.offsetOf(node);
+        int newLength = aPiece.text.length();
+        if(!node.displayed || newLength != node.displayedLength
+                || !TextUtils.regionMatches(mBuffer, start, aPiece.text, 0, newLength)) {
+            mBlockLayoutRequests = node.displayed
+                    && keepsGeometry(aPiece, start, node.displayedLength);
+            mBuffer.replace(start, start + node.displayedLength, aPiece.text);
+            mBlockLayoutRequests = false;
+            mCharactersWritten += newLength;
+            onTextEdited(start, node.displayedLength, newLength);
+            mTree.show(node, newLength);
+        }
+        applyPieceSpans(mBuffer, node, start);
+    }
+
+    /**
+     * Takes the text and spans of a Piece out of the displayed text, in large document mode.
+     */
+    private void pageOut(PieceTree.Node node) {
+        removePieceSpans(node);
+        if(node.displayedLength > 0) {
+            int start = mTree.offsetOf(node);
+            mBuffer.delete(start, start + node.displayedLength);
+            onTextEdited(start, node.displayedLength, 0);
+        }
+        mTree.hide(node);
+    }
+
+    private static PieceTree.Node nextLive(PieceTree.Node node) {
+        do {
+            node = PieceTree.next(node);
+        } while(node != null && !node.live);
+        return node;
+    }
+
+    /**
+     * Styles the displayed text of a Piece with spans of its own, in large document mode. Spans
+     * whose value didn't change are only moved.
+     */
+    private void applyPieceSpans(Spannable text, PieceTree.Node node, int start) {
+        Piece aPiece = node.piece;
+        int length = node.displayedLength;
+        for(int kind = 0; kind < Composition.KIND_COUNT; kind++) {
+            int value = SpanPlanner.valueOf(aPiece, kind);
+            Object span = node.spans != null ? node.spans[kind] : null;
+
+            // empty ranges can't be spanned
+            if(length == 0 || !mComposer.needsSpan(kind, value)) {
+                if(span != null) {
+                    text.removeSpan(span);
+                    mSpansInUse.remove(span);
+                    node.spans[kind] = null;
+                    mTreeSpanCount--;
+                }
+                continue;
+            }
+
+            if(span == null || node.spanValues[kind] != value) {
+                if(span != null) {
+                    text.removeSpan(span);
+                    mSpansInUse.remove(span);
+                } else {
+                    mTreeSpanCount++;
+                }
+                if(node.spans == null) {
+                    node.spans = new Object[Composition.KIND_COUNT];
+                    node.spanValues = new int[Composition.KIND_COUNT];
+                }
+                span = obtainSpan(kind, value);
+                node.spans[kind] = span;
+                node.spanValues[kind] = value;
+            }
+            setSpan(text, span, kind, start, start + length);
+        }
+    }
+
+    private void removePieceSpans(PieceTree.Node node) {
+        if(node.spans == null) {
+            return;
+        }
+        for(int kind = 0; kind < Composition.KIND_COUNT; kind++) {
+            Object span = node.spans[kind];
+            if(span != null) {
+                mBuffer.removeSpan(span);
+                mSpansInUse.remove(span);
+                mTreeSpanCount--;
+            }
+        }
+        node.spans = null;
+    }
+
+    /**
+     * Replaces the list of Pieces, keeping the large document mode if it is on.
+     */
+    private void setPieceList(List<Piece> pieces) {
+        mTemplate = null;
+        if(mPacked != null) {
+            mPacked.attachTo(null);
+            mPacked = null;
+        }
+        if(mTree != null) {
+            mTree.detach();
+            mTree = new PieceTree(pieces);
+            mPieces = mTree;
+        } else {
+            mPieces = new ArrayList<>(pieces);
+        }
+    }
+
+    /**
+     * @return true if replacing the displayed text of a Piece with its current text keeps the
+     * same length and the same measured width under the Piece's style, such as "$179" becoming
+     * "$178" with digits of equal widths.
+     */
+    private boolean keepsGeometry(Piece aPiece, int start, int oldLength) {
+        if(aPiece.text.length() != oldLength) {
+            return false;
+        }
+
+        // measure like the layout would, through the spans changing the metrics of the Piece
+        TextPaint paint = mMeasurePaint;
+        paint.set(getPaint());
+        SpanCache cache = SpanCache.getInstance();
+        ((MetricAffectingSpan) cache.obtain(Composition.STYLE, aPiece.style))
+                .updateMeasureState(paint);
+        ((MetricAffectingSpan) cache.obtain(Composition.ABSOLUTE_SIZE, aPiece.textSize))
+                .updateMeasureState(paint);
+        ((MetricAffectingSpan) cache.obtain(Composition.RELATIVE_SIZE,
+                Float.floatToIntBits(aPiece.textSizeRelative))).updateMeasureState(paint);
+
+        return paint.measureText(mBuffer, start, start + oldLength)
+                == paint.measureText(aPiece.text, 0, oldLength);
+    }
+
+    @Override
+    public void requestLayout() {
+        if(mBlockLayoutRequests) {
+            mLayoutRequestBlocked = true;
+            return;
+        }
+        mLayoutRequested = true;
+        super.requestLayout();
+    }
+
+    /**
+     * @return how many times display() updated the text without laying this view out again,
+     * because the edited Pieces kept the same length and width.
+     */
+    public int getAvoidedRelayoutCount() {
+        return mAvoidedRelayoutCount;
+    }
+
+    /**
+     * Walks the runs currently applied and the newly planned ones side by side (both are ordered
+     * by kind and first Piece): runs in both keep their span, runs only in the old plan lose it
+     * and runs only in the new plan get a new one.
+     */
+    private void reconcileSpans() {
+        SpanPlan applied = mApplied;
+        SpanPlan planned = mPlanned;
+        int a = 0;
+        int p = 0;
+
+        while(a < applied.size() || p < planned.size()) {
+            if(a < applied.size() && p < planned.size() && applied.sameRun(a, planned, p)) {
+                Object span = applied.spanAt(a);
+                planned.setSpanAt(p, span);
+                if(coversChangedText(planned, p)) {
+                    setRunSpan(mBuffer, planned, p);
+                }
+                a++;
+                p++;
+            } else if(p == planned.size()
+                    || (a < applied.size() && applied.compareRuns(a, planned, p) <= 0)) {
+                mBuffer.removeSpan(applied.spanAt(a));
+                mSpansInUse.remove(applied.spanAt(a));
+                a++;
+            } else {
+                Object span = obtainSpan(planned.kindAt(p), planned.valueAt(p));
+                planned.setSpanAt(p, span);
+                setRunSpan(mBuffer, planned, p);
+                p++;
+            }
+        }
+
+        mApplied = planned;
+        mPlanned = applied;
+        mPlanned.clear();
+    }
+
+    private boolean coversChangedText(SpanPlan plan, int run) {
+        for(int i = plan.firstPieceAt(run); i <= plan.lastPieceAt(run); i++) {
+            if(mTextChanged[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets a shared span for a run of the displayed text. A color span is only replaced by one of
+     * this view when {@link #restyle(Palette)} recolors it.
+     */
+    private Object obtainSpan(int kind, int value) {
+        return SpannableAdapter.obtainSpan(kind, value, mSpansInUse);
+    }
+
+    private void setRunSpan(Spannable finalString, SpanPlan plan, int run) {
+        setSpan(finalString, plan.spanAt(run), plan.kindAt(run),
+                mOffsets[plan.firstPieceAt(run)], mOffsets[plan.lastPieceAt(run) + 1]);
+    }
+
+    private void setSpan(Spannable text, Object span, int kind, int start, int end) {
+        SpannableAdapter.setSpan(text, span, kind, start, end);
+        mSpansWritten++;
+    }
+
+    /**
+     * @return true if the text size or color of the view changed since the last call
+     */
+    private boolean updateComposerDefaults() {
+        return mComposer.setDefaults((int) getTextSize(), getCurrentTextColor(),
+                !getTextColors().isStateful());
+    }
+
+    private void ensureCapacity(int pieceCount) {
+        if(mOffsets.length < pieceCount + 1) {
+            int capacity = Math.max(pieceCount + 1, mOffsets.length * 2);
+            mOffsets = new int[capacity];
+            mTextChanged = new boolean[capacity];
+        }
+    }
+
+    /**
+     * @return the number of spans styling the displayed text.
+     */
+    public int getSpanCount() {
+        if(mComposedSpanCount >= 0) {
+            return mComposedSpanCount;
+        }
+        if(mTree != null) {
+            return mTreeSpanCount;
+        }
+        return mApplied.size();
+    }
+
+    /**
+     * @return the number of spans the current Pieces would need if each of them was styled on
+     * its own with every attribute spelled out. Compare with {@link #getSpanCount()} to see how
+     * many spans were saved.
+     */
+    public int getUnoptimizedSpanCount() {
+        return SpanPlanner.countUnoptimizedSpans(mPieces);
+    }
+
+    /**
+     * Replaces the Pieces of this view with a new list, such as a full refresh sent by a server,
+     * and displays it right away. The new list is matched against the current one: Pieces which
+     * are the same instance, or show the same text with the same attributes, keep their displayed
+     * text and spans, and only the text of inserted and removed Pieces is edited.
+     *
+     * @param pieces the new Pieces, in display order
+     * @return how many Pieces were reused, inserted and removed
+     */
+    public PieceDiff setPieces(List<Piece> pieces) {
+        mPiecesByKey = indexKeys(pieces);
+        mIndicesValid = false;
+        List<Piece> oldPieces = mPieces;
+        PieceDiff diff = PieceDiff.compute(oldPieces, pieces);
+
+        Set<Piece> kept = Collections.newSetFromMap(new IdentityHashMap<Piece, Boolean>());
+        kept.addAll(pieces);
+        for(Piece aPiece : oldPieces) {
+            if(!kept.contains(aPiece)) {
+                release(aPiece);
+            }
+        }
+
+        boolean inPlace = diff.isComplete() && mBuffer != null && !mStructureChanged
+                && getText() == mBuffer;
+        if(mTree != null && inPlace) {
+            // the tree displays each insertion and removal in place
+            int oldCount = oldPieces.size();
+            int index = 0;
+            int oldIndex = 0;
+            for(int i = 0; i < pieces.size(); i++) {
+                Piece aPiece = pieces.get(i);
+                aPiece.owner = this;
+                while(oldIndex < oldCount && diff.getNewIndex(oldIndex) < 0) {
+                    mTree.remove(index);
+                    oldIndex++;
+                }
+                int match = diff.getOldIndex(i);
+                if(match < 0) {
+                    mTree.add(index, aPiece);
+                } else {
+                    if(mTree.get(index) != aPiece) {
+                        mTree.set(index, aPiece);
+                    }
+                    oldIndex = match + 1;
+                }
+                index++;
+            }
+            while(mTree.size() > index) {
+                mTree.remove(index);
+            }
+            display();
+            return diff;
+        }
+
+        setPieceList(pieces);
+        for(Piece aPiece : mPieces) {
+            aPiece.owner = this;
+        }
+
+        if(mTree != null || !inPlace) {
+            // nothing displayed to edit, or too much of it
+            mStructureChanged = true;
+            display();
+            return diff;
+        }
+        cancelScheduledDisplay();
+
+        DisplayStats.beginSection("BabushkaText#setPieces");
+        boolean recording = beginRecording();
+        try {
+            editPieces(oldPieces, diff);
+            if(recording) {
+                endRecording(DisplayEvent.UPDATE, mPieces.size());
+            }
+        } finally {
+            if(recording) {
+                mRecording = false;
+            }
+            DisplayStats.endSection();
+        }
+        return diff;
+    }
+
+    /**
+     * Edits the displayed text of the old Pieces into that of the new ones, inserting and
+     * deleting the text of the Pieces which didn't match, then displays the modified Pieces.
+     */
+    private void editPieces(List<Piece> oldPieces, PieceDiff diff) {
+        int displayedCount = mDisplayed.size();
+        remapAppliedRuns(diff, displayedCount);
+
+        List<DisplayedPiece> displayed = new ArrayList<>(mPieces.size());
+        int cursor = 0;
+        int oldIndex = 0;
+        for(int i = 0; i < mPieces.size(); i++) {
+            Piece aPiece = mPieces.get(i);
+            int match = diff.getOldIndex(i);
+
+            // removed Pieces go first, so text is only inserted between reused Pieces and can't
+            // stretch a span over removed text
+            while(oldIndex < oldPieces.size() && diff.getNewIndex(oldIndex) < 0) {
+                deleteDisplayed(oldIndex, displayedCount, cursor);
+                oldIndex++;
+            }
+
+            if(match >= 0 && match < displayedCount) {
+                DisplayedPiece reused = mDisplayed.get(match);
+                Piece oldPiece = oldPieces.get(match);
+                if(oldPiece != aPiece) {
+                    // an equal Piece shows the displayed text if the old one was up to date,
+                    // otherwise update() compares the text
+                    reused.modCount = oldPiece.modCount == reused.modCount
+                            ? aPiece.modCount : aPiece.modCount - 1;
+                }
+                displayed.add(reused);
+                cursor += reused.length;
+            } else {
+                // inserted, or matched a Piece which wasn't displayed yet
+                mBuffer.insert(cursor, aPiece.text);
+                mCharactersWritten += aPiece.text.length();
+                onTextEdited(cursor, 0, aPiece.text.length());
+                DisplayedPiece inserted = new DisplayedPiece(aPiece);
+                inserted.inserted = true;
+                displayed.add(inserted);
+                cursor += inserted.length;
+            }
+            if(match >= 0) {
+                oldIndex = match + 1;
+            }
+        }
+        for(; oldIndex < oldPieces.size(); oldIndex++) {
+            deleteDisplayed(oldIndex, displayedCount, cursor);
+        }
+
+        mDisplayed.clear();
+        mDisplayed.addAll(displayed);
+        update(true);
+    }
+
+    /**
+     * Removes the text of an old Piece from the buffer, if it was displayed.
+     */
+    private void deleteDisplayed(int oldIndex, int displayedCount, int start) {
+        if(oldIndex < displayedCount) {
+            int length = mDisplayed.get(oldIndex).length;
+            mBuffer.delete(start, start + length);
+            onTextEdited(start, length, 0);
+        }
+    }
+
+    /**
+     * Renumbers the Pieces of the applied runs after a diff, so update() can tell which spans are
+     * still right. The buffer shrinks spans over removed text by itself; runs left without any
+     * Piece lose their span.
+     */
+    private void remapAppliedRuns(PieceDiff diff, int displayedCount) {
+        SpanPlan remapped = mPlanned;
+        remapped.clear();
+        for(int run = 0; run < mApplied.size(); run++) {
+            int first = -1;
+            int last = -1;
+            for(int i = mApplied.firstPieceAt(run); i <= mApplied.lastPieceAt(run)
+                    && i < displayedCount; i++) {
+                int newIndex = diff.getNewIndex(i);
+                if(newIndex >= 0) {
+                    if(first < 0) {
+                        first = newIndex;
+                    }
+                    last = newIndex;
+                }
+            }
+
+            Object span = mApplied.spanAt(run);
+            if(first < 0) {
+                mBuffer.removeSpan(span);
+                mSpansInUse.remove(span);
+            } else {
+                remapped.add(mApplied.kindAt(run), mApplied.valueAt(run), first, last);
+                remapped.setSpanAt(remapped.size() - 1, span);
+            }
+        }
+        mPlanned = mApplied;
+        mPlanned.clear();
+        mApplied = remapped;
+    }
+
+    /**
+     * Captures the properties of this view that {@link PrecomputedPieces} need to style and
+     * measure text for it. Call it on the UI thread, then precompute on any thread. The same
+     * parameters are returned as long as these properties don't change.
+     *
+     * @return the parameters to precompute text for this view with
+     */
+    public PrecomputedPieces.Params getPrecomputeParams() {
+        int textSize = (int) getTextSize();
+        int textColor = getCurrentTextColor();
+        boolean hasTextColor = !getTextColors().isStateful();
+        int width = getWidth() - getCompoundPaddingLeft() - getCompoundPaddingRight();
+        if(mPrecomputeParams == null || !mPrecomputeParams.matches(textSize, textColor,
+                hasTextColor, getPaint(), width)) {
+            mPrecomputeParams = new PrecomputedPieces.Params(textSize, textColor, hasTextColor,
+                    getPaint(), width);
+        }
+        return mPrecomputeParams;
+    }
+
+    /**
+     * Replaces the Pieces of this view with precomputed ones and shows them right away. Showing
+     * precomputed text only copies it, so this is cheap enough to call while binding list items.
+     *
+     * If the text size or color of this view changed since the parameters were captured, the text
+     * is composed again as with {@link #display()}.
+     *
+     * @param precomputed the Pieces and their styled text
+     */
+    public void setPrecomputed(PrecomputedPieces precomputed) {
+        DisplayStats.beginSection("BabushkaText#bind");
+        boolean recording = beginRecording();
+        try {
+            showPrecomputed(precomputed, precomputed.getPieces(), true);
+            if(recording) {
+                endRecording(DisplayEvent.BIND, mPieces.size());
+            }
+        } finally {
+            if(recording) {
+                mRecording = false;
+            }
+            DisplayStats.endSection();
+        }
+    }
+
+    /**
+     * Shows the Pieces of a model, reusing the text composed for an equal model by any view if
+     * the {@link ComposedTextCache} still holds it. The view gets Pieces of its own, which can be
+     * modified like added ones.
+     *
+     * @param model the Pieces to show
+     */
+    public void bind(PieceModel model) {
+        DisplayStats.beginSection("BabushkaText#bind");
+        boolean recording = beginRecording();
+        try {
+            PrecomputedPieces precomputed = ComposedTextCache.getInstance().obtain(model,
+                    getPrecomputeParams());
+            showPrecomputed(precomputed, model.newPieces(), false);
+            if(recording) {
+                endRecording(DisplayEvent.BIND, mPieces.size());
+            }
+        } finally {
+            if(recording) {
+                mRecording = false;
+            }
+            DisplayStats.endSection();
+        }
+    }
+
+    /**
+     * Shows a template with these values in its slots, instead of the Pieces of this view, which
+     * are removed. Binding builds no Piece and composes nothing: the text is copied from the
+     * values and styled by the spans the template shares with every view. Binding the same
+     * template again, as when a list item is recycled, only replaces the values which changed.
+     *
+     * Pieces added afterwards replace the template when displayed.
+     *
+     * @param template the template
+     * @param values the values of the slots, in the order they first appear in the markup
+     */
+    public void bind(PieceTemplate template, CharSequence... values) {
+        template.checkValues(values);
+        DisplayStats.beginSection("BabushkaText#bind");
+        boolean recording = beginRecording();
+        try {
+            int kind = showTemplate(template, values);
+            if(recording) {
+                endRecording(kind, template.getPieceCount());
+            }
+        } finally {
+            if(recording) {
+                mRecording = false;
+            }
+            DisplayStats.endSection();
+        }
+    }
+
+    /**
+     * @return {@link DisplayEvent#REBIND} if only the values were replaced,
+     * {@link DisplayEvent#BIND} otherwise
+     */
+    private int showTemplate(PieceTemplate template, CharSequence[] values) {
+        cancelScheduledDisplay();
+        SpanPlan plan = template.getPlan((int) getTextSize(), getCurrentTextColor(),
+                !getTextColors().isStateful());
+        if(template == mTemplate && plan == mTemplatePlan && mPieces.isEmpty()
+                && getText() == mBuffer) {
+            rebindSlots(values);
+            mComposedSpanCount = countTemplateSpans();
+            return DisplayEvent.REBIND;
+        }
+
+        clearPieces();
+        int pieceCount = template.getPieceCount();
+        ensureCapacity(pieceCount);
+        String[] displayedValues = new String[values.length];
+        for(int slot = 0; slot < values.length; slot++) {
+            displayedValues[slot] = values[slot].toString();
+        }
+        StringBuilder text = new StringBuilder();
+        int part = 0;
+        for(int i = 0; i < pieceCount; i++) {
+            mOffsets[i] = text.length();
+            for(; part < template.getPartCount() && template.getPartPiece(part) == i; part++) {
+                int slot = template.getPartSlot(part);
+                text.append(slot >= 0 ? displayedValues[slot] : template.getPartText(part));
+            }
+        }
+        mOffsets[pieceCount] = text.length();
+
+        SpannableStringBuilder buffer = new SpannableStringBuilder(text);
+        mCharactersWritten += buffer.length();
+        for(int run = 0; run < plan.size(); run++) {
+            setTemplateSpan(buffer, plan, run);
+        }
+        show(buffer);
+
+        // the spans aren't tracked as those of Pieces, so Pieces displayed next start from scratch
+        mStructureChanged = true;
+        mTemplate = template;
+        mTemplatePlan = plan;
+        mTemplateValues = displayedValues;
+        mComposedSpanCount = countTemplateSpans();
+        return DisplayEvent.BIND;
+    }
+
+    /**
+     * Shows Pieces encoded by {@link PieceCodec}, such as sent by a server, instead of the Pieces
+     * of this view, which are removed. They are composed straight from the buffer, without
+     * building any Piece, so they can't be modified afterwards: decode them with
+     * {@link PieceCodec#decode(ByteBuffer)} and display them as usual for that.
+     *
+     * Pieces added afterwards replace the encoded ones when displayed.
+     *
+     * @param encoded the buffer, at the start of the encoded Pieces. It is moved past them.
+     * @throws IllegalArgumentException if the buffer doesn't hold encoded Pieces, in which case
+     *                                  the view is left as it was
+     */
+    public void bind(ByteBuffer encoded) {
+        DisplayStats.beginSection("BabushkaText#bind");
+        boolean recording = beginRecording();
+        try {
+            updateComposerDefaults();
+            Composition composition = mComposer.compose(encoded);
+            cancelScheduledDisplay();
+            clearPieces();
+            showComposition(composition);
+            if(recording) {
+                endRecording(DisplayEvent.BIND, composition.getPieceCount());
+            }
+        } finally {
+            if(recording) {
+                mRecording = false;
+            }
+            DisplayStats.endSection();
+        }
+    }
+
+    /**
+     * Saves the Pieces of this view, in the format of {@link PieceCodec}, so they survive
+     * configuration changes. Packed, encoded and template texts are left to be bound again.
+     */
+    @Override
+    public Parcelable onSaveInstanceState() {
+        Parcelable superState = super.onSaveInstanceState();
+        if(mPieces.isEmpty()) {
+            return superState;
+        }
+        SavedState state = new SavedState(superState);
+        state.pieces = PieceCodec.encode(mPieces);
+        return state;
+    }
+
+    /**
+     * Displays the saved Pieces, replacing those of this view.
+     */
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if(!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        setPieces(PieceCodec.decode(ByteBuffer.wrap(savedState.pieces)));
+    }
+
+    /**
+     * Replaces the values of the displayed template which changed, from the last one back so
+     * the text before each one doesn't move, then fixes the spans of the Pieces they are in.
+     */
+    private void rebindSlots(CharSequence[] values) {
+        PieceTemplate template = mTemplate;
+        int pieceCount = template.getPieceCount();
+        for(int i = 0; i < pieceCount; i++) {
+            mTextChanged[i] = false;
+        }
+
+        int cursor = mBuffer.length();
+        for(int part = template.getPartCount() - 1; part >= 0; part--) {
+            int slot = template.getPartSlot(part);
+            if(slot < 0) {
+                cursor -= template.getPartText(part).length();
+                continue;
+            }
+            String displayed = mTemplateValues[slot];
+            cursor -= displayed.length();
+            if(!displayed.contentEquals(values[slot])) {
+                mBuffer.replace(cursor, cursor + displayed.length(), values[slot]);
+                mCharactersWritten += values[slot].length();
+                onTextEdited(cursor, displayed.length(), values[slot].length());
+                mTextChanged[template.getPartPiece(part)] = true;
+            }
+        }
+
+        int offset = 0;
+        int part = 0;
+        for(int i = 0; i < pieceCount; i++) {
+            mOffsets[i] = offset;
+            for(; part < template.getPartCount() && template.getPartPiece(part) == i; part++) {
+                int slot = template.getPartSlot(part);
+                offset += slot >= 0 ? values[slot].length() : template.getPartText(part).length();
+            }
+        }
+        mOffsets[pieceCount] = offset;
+        for(int slot = 0; slot < values.length; slot++) {
+            if(!mTemplateValues[slot].contentEquals(values[slot])) {
+                mTemplateValues[slot] = values[slot].toString();
+            }
+        }
+
+        for(int run = 0; run < mTemplatePlan.size(); run++) {
+            if(coversChangedText(mTemplatePlan, run)) {
+                setTemplateSpan(mBuffer, mTemplatePlan, run);
+            }
+        }
+    }
+
+    /**
+     * @return the number of runs of the displayed template whose Pieces aren't empty, which are
+     * those with a span
+     */
+    private int countTemplateSpans() {
+        int count = 0;
+        for(int run = 0; run < mTemplatePlan.size(); run++) {
+            if(mOffsets[mTemplatePlan.firstPieceAt(run)]
+                    < mOffsets[mTemplatePlan.lastPieceAt(run) + 1]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Applies the span of a template run, unless the values left its Pieces empty.
+     */
+    private void setTemplateSpan(Spannable text, SpanPlan plan, int run) {
+        int start = mOffsets[plan.firstPieceAt(run)];
+        int end = mOffsets[plan.lastPieceAt(run) + 1];
+        if(start < end) {
+            setSpan(text, plan.spanAt(run), plan.kindAt(run), start, end);
+        } else {
+            text.removeSpan(plan.spanAt(run));
+        }
+    }
+
+    /**
+     * Replaces the Pieces of this view with the given ones, showing the precomputed text.
+     *
+     * @param pieces the precomputed Pieces, or copies of them
+     * @param snapshot true if the Pieces are the precomputed ones, which may have been modified
+     *                 since they were precomputed
+     */
+    private void showPrecomputed(PrecomputedPieces precomputed, List<Piece> pieces,
+            boolean snapshot) {
+        mPiecesByKey = indexKeys(pieces);
+        mIndicesValid = false;
+        for(Piece aPiece : mPieces) {
+            release(aPiece);
+        }
+        for(PieceStream stream : mStreams) {
+            stream.close();
+        }
+        setConcurrentPieces(null);
+        setPieceList(pieces);
+        for(Piece aPiece : mPieces) {
+            aPiece.owner = this;
+        }
+
+        // the large document mode styles each Piece on its own, unlike precomputed text
+        if(mTree != null
+                || !precomputed.getParams().isCompatibleWith(getPrecomputeParams())) {
+            mStructureChanged = true;
+            display();
+            return;
+        }
+
+        cancelScheduledDisplay();
+        // compatible params mean the text was composed with the defaults of this view
+        updateComposerDefaults();
+
+        Composition composition = precomputed.getComposition();
+        SpannableStringBuilder buffer = new SpannableStringBuilder(precomputed.getText());
+        mCharactersWritten += buffer.length();
+        ensureCapacity(mPieces.size());
+        composition.copyPieceOffsetsTo(mOffsets);
+
+        // the copy holds the same span instances as the precomputed text
+        composition.copyRunsTo(mApplied);
+        mSpansInUse.clear();
+        for(int run = 0; run < mApplied.size(); run++) {
+            mApplied.setSpanAt(run, precomputed.getSpan(run));
+            mSpansInUse.add(precomputed.getSpan(run));
+        }
+        mSpansWritten += mApplied.size();
+
+        mDisplayed.clear();
+        boolean modified = false;
+        for(int i = 0; i < mPieces.size(); i++) {
+            int modCount = snapshot ? precomputed.getModCount(i) : mPieces.get(i).modCount;
+            mDisplayed.add(new DisplayedPiece(
+                    composition.getPieceEnd(i) - composition.getPieceStart(i), modCount));
+            modified |= mPieces.get(i).modCount != modCount;
+        }
+        show(buffer);
+
+        // Pieces modified after they were precomputed are brought up to date in place
+        if(modified) {
+            display();
+        }
+    }
+
+    /**
+     * Resets the styling of this view and sets it's content to an empty String.
+     */
+    public void reset() {
+        clearPieces();
+        setText("");
+        onTextReplaced();
+    }
+
+    /**
+     * Removes the Pieces of this view and forgets the displayed text, without changing it.
+     */
+    private void clearPieces() {
+        for(Piece aPiece : mPieces) {
+            release(aPiece);
+        }
+        setPieceList(Collections.<Piece>emptyList());
+        mPiecesByKey.clear();
+        mIndicesValid = true;
+        for(PieceStream stream : mStreams) {
+            stream.close();
+        }
+        setConcurrentPieces(null);
+        mDisplayed.clear();
+        mBuffer = null;
+        mApplied.clear();
+        mSpansInUse.clear();
+        mStructureChanged = true;
+    }
+
+    /**
+     * Highlights every occurrence of a query in the displayed text, ignoring case, over the
+     * Pieces and across their boundaries. The highlights are an overlay: the Pieces and their
+     * spans aren't touched, only the highlights of the previous query are replaced.
+     *
+     * The text is indexed the first time it is searched, so typing a query only costs in
+     * proportion to its matches. The highlights then follow the displayed text: Pieces edited in
+     * place only have their own text searched again. The index outlives such edits too, their
+     * text being scanned on its own for new queries until they add up to an eighth of the text.
+     * Text composed from scratch is searched for the current query on the next frame, or as soon
+     * as the matches are asked for.
+     *
+     * @param query the text to find, empty or null to remove the highlights
+     * @return the number of matches
+     */
+    public int highlight(CharSequence query) {
+        if(mHighlights == null && (query == null || query.length() == 0)) {
+            return 0;
+        }
+        CharSequence text = getText();
+        if(!(text instanceof Spannable)) {
+            // nothing displayed yet, the query is highlighted once there is
+            text = new SpannableStringBuilder(text);
+        }
+        return obtainHighlights().highlight((Spannable) text, query);
+    }
+
+    /**
+     * Removes the search highlights.
+     */
+    public void clearHighlight() {
+        highlight(null);
+    }
+
+    /**
+     * Sets the background color of the search highlights, changed in place if there are some.
+     *
+     * @param color the color
+     */
+    public void setSearchHighlightColor(int color) {
+        obtainHighlights().setColor(color);
+        invalidate();
+    }
+
+    /**
+     * @return the number of matches of the current query
+     */
+    public int getHighlightCount() {
+        if(mHighlights == null) {
+            return 0;
+        }
+        refreshHighlights();
+        return mHighlights.getMatchCount();
+    }
+
+    /**
+     * @param index the index of a match, from 0 to {@link #getHighlightCount()}, in text order
+     * @return where the match starts in the displayed text. It ends as many chars further as the
+     * query is long.
+     */
+    public int getHighlightStart(int index) {
+        if(mHighlights == null) {
+            throw new IndexOutOfBoundsException("No match " + index + ", 0 found");
+        }
+        refreshHighlights();
+        return mHighlights.getMatchStart(index);
+    }
+
+    private HighlightOverlay obtainHighlights() {
+        if(mHighlights == null) {
+            mHighlights = new HighlightOverlay(DEFAULT_HIGHLIGHT_COLOR);
+            mHighlightRunnable = new Runnable() {
+                @Override
+                public void run() {
+                    mHighlightScheduled = false;
+                    refreshHighlights();
+                }
+            };
+        }
+        return mHighlights;
+    }
+
+    /**
+     * Called whenever the displayed text was edited in place, for the highlights to follow it.
+     *
+     * @param start where the edit starts
+     * @param before the number of chars replaced
+     * @param after the number of chars replacing them
+     */
+    private void onTextEdited(int start, int before, int after) {
+        if(mHighlights == null || !mHighlights.hasQuery()) {
+            return;
+        }
+        mHighlights.edited(mBuffer, start, before, after);
+        if(mHighlights.isStale()) {
+            scheduleHighlightRefresh();
+        }
+    }
+
     /**
-     * Create a new instance of a this class
-     * @param context
+     * Called whenever the displayed text was replaced as a whole, to highlight the current query
+     * again on the next frame.
      */
-    public BabushkaText(Context context) {
-        super(context);
-        init();
+    private void onTextReplaced() {
+        if(mHighlights == null || !mHighlights.hasQuery()) {
+            return;
+        }
+        mHighlights.replaced();
+        scheduleHighlightRefresh();
     }
 
-    public BabushkaText(Context context, AttributeSet attrs) {
-        super(context, attrs);
-        init();
+    private void scheduleHighlightRefresh() {
+        if(!mHighlightScheduled) {
+            mHighlightScheduled = true;
+            ViewCompat.postOnAnimation(this, mHighlightRunnable);
+        }
     }
 
-    public BabushkaText(Context context, AttributeSet attrs, int defStyleAttr) {
-        super(context, attrs, defStyleAttr);
-        init();
+    /**
+     * Finds the matches of the current query again if the text was replaced since.
+     */
+    private void refreshHighlights() {
+        CharSequence text = getText();
+        if(mHighlights.isStale() && text instanceof Spannable) {
+            mHighlights.refresh((Spannable) text);
+        }
     }
 
-    private void init() {
-        mPieces = new ArrayList<>();
-        BabushkaText.DEFAULT_ABSOLUTE_TEXT_SIZE = (int) getTextSize();
+    /**
+    * Change text color of all pieces of textview. The change is displayed right away, see
+    * {@link #restyle(Palette)}.
+    */
+    public void changeTextColor(final int textColor) {
+        restyle(new Palette() {
+            @Override
+            public int mapTextColor(int color) {
+                return textColor;
+            }
+        });
     }
 
     /**
-     * Use this method to add a {@link babushkatext.BabushkaText.Piece} to a BabushkaText.
-     * Each {@link babushkatext.BabushkaText.Piece } is added sequentially, so the
-     * order you call this method matters.
+     * Applies a palette to all the Pieces of this view, e.g. to switch themes. New colors are set
+     * in place, in the spans already styling the text, so the view is only drawn again: the text
+     * is neither rebuilt nor laid out.
      *
-     * @param aPiece the Piece
+     * Pieces whose text size changes, or which gain or lose a color span because their color
+     * becomes or stops being the view's, are displayed as if modified: right away, or on the
+     * next frame during a batch or when modifications are displayed automatically. Pieces added
+     * or modified since the last display are displayed right away too.
+     *
+     * A shared color span is replaced by one of this view the first time it is recolored.
+     *
+     * @param palette the mapping of colors and text sizes
      */
-    public void addPiece(Piece aPiece) {
-        mPieces.add(aPiece);
+    public void restyle(Palette palette) {
+        boolean modified = false;
+        for(int i = 0; i < mPieces.size(); i++) {
+            Piece aPiece = mPieces.get(i);
+            int textColor = palette.mapTextColor(aPiece.textColor);
+            int backgroundColor = aPiece.backgroundColor != -1
+                    ? palette.mapBackgroundColor(aPiece.backgroundColor) : -1;
+            int textSize = palette.mapTextSize(aPiece.textSize);
+
+            boolean spansChanged = textSize != aPiece.textSize
+                    || mComposer.needsSpan(Composition.TEXT_COLOR, textColor)
+                            != mComposer.needsSpan(Composition.TEXT_COLOR, aPiece.textColor)
+                    || (backgroundColor == -1) != (aPiece.backgroundColor == -1);
+            aPiece.textColor = textColor;
+            aPiece.backgroundColor = backgroundColor;
+            aPiece.textSize = textSize;
+            if(spansChanged) {
+                aPiece.modCount++;
+                aPiece.notifyOwner();
+                modified = true;
+            }
+        }
+
+        // the spans of Pieces marked as modified are fixed when displayed
+        if(mTree != null) {
+            for(PieceTree.Node node = mTree.first(); node != null; node = PieceTree.next(node)) {
+                if(node.spans == null) {
+                    continue;
+                }
+                for(int kind = Composition.TEXT_COLOR; kind <= Composition.BACKGROUND_COLOR;
+                        kind++) {
+                    Object span = node.spans[kind];
+                    int value = node.spanValues[kind];
+                    if(span != null && mapColor(palette, kind, value) != value) {
+                        node.spanValues[kind] = mapColor(palette, kind, value);
+                        node.spans[kind] = recolor(span, kind, node.spanValues[kind]);
+                    }
+                }
+            }
+        } else {
+            for(int run = 0; run < mApplied.size(); run++) {
+                int kind = mApplied.kindAt(run);
+                int value = mApplied.valueAt(run);
+                if((kind == Composition.TEXT_COLOR || kind == Composition.BACKGROUND_COLOR)
+                        && mapColor(palette, kind, value) != value) {
+                    mApplied.setValueAt(run, mapColor(palette, kind, value));
+                    mApplied.setSpanAt(run, recolor(mApplied.spanAt(run), kind,
+                            mApplied.valueAt(run)));
+                }
+            }
+        }
+        invalidate();
+
+        if((modified || hasUndisplayedChanges()) && mBatchDepth == 0 && !mAutoDisplay) {
+            display();
+        }
     }
 
     /**
-     * Adds a Piece at this specific location. The underlying data structure is a
-     * {@link java.util.List}, so expect the same type of behaviour.
-     *
-     * @param aPiece the Piece to add.
-     * @param location the index at which to add.
+     * @return true if Pieces were added, removed or modified since they were last displayed
      */
-    public void addPiece(Piece aPiece, int location) {
-        mPieces.add(location, aPiece);
+    private boolean hasUndisplayedChanges() {
+        if(mPacked != null || mBuffer == null || mStructureChanged || getText() != mBuffer) {
+            return true;
+        }
+        if(mTree != null) {
+            return mTree.hasPending();
+        }
+        if(mDisplayed.size() != mPieces.size()) {
+            return true;
+        }
+        for(int i = 0; i < mPieces.size(); i++) {
+            DisplayedPiece displayed = mDisplayed.get(i);
+            if(displayed.inserted || displayed.modCount != mPieces.get(i).modCount) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int mapColor(Palette palette, int kind, int color) {
+        return kind == Composition.TEXT_COLOR
+                ? palette.mapTextColor(color) : palette.mapBackgroundColor(color);
     }
 
     /**
-     * Replaces the Piece at the specified location with this new Piece. The underlying data
-     * structure is a {@link java.util.List}, so expect the same type of behaviour.
+     * Gives a color span of the displayed text a new color. Shared spans are replaced by one of
+     * this view, changed in place from then on.
      *
-     * @param newPiece the Piece to insert.
-     * @param location the index at which to insert.
+     * @return the span now styling the range
      */
-    public void replacePieceAt(int location, Piece newPiece) {
-        mPieces.set(location, newPiece);
+    private Object recolor(Object span, int kind, int color) {
+        if(span instanceof MutableColorSpan) {
+            ((MutableColorSpan) span).setColor(color);
+            return span;
+        }
+        MutableColorSpan mutable = new MutableColorSpan(kind == Composition.BACKGROUND_COLOR, color);
+        int start = mBuffer.getSpanStart(span);
+        if(start >= 0) {
+            int end = mBuffer.getSpanEnd(span);
+            int flags = mBuffer.getSpanFlags(span);
+            mBuffer.removeSpan(span);
+            mBuffer.setSpan(mutable, start, end, flags);
+        }
+        mSpansInUse.remove(span);
+        mSpansInUse.add(mutable);
+        return mutable;
     }
 
     /**
-     * Removes the Piece at this specified location. The underlying data structure is a
-     * {@link java.util.List}, so expect the same type of behaviour.
+     * Starts a batch of modifications. Until the matching {@link #endBatch()}, adding, replacing,
+     * removing or modifying the Pieces of this view doesn't display anything; the batch ends with
+     * a single {@link #display()}, on the next frame.
      *
-     * @param location the index of the Piece to remove
+     * Batches may be nested, only the outermost one schedules the display.
      */
-    public void removePiece(int location) {
-        mPieces.remove(location);
+    public void beginBatch() {
+        mBatchDepth++;
     }
 
     /**
-     * Get a specific {@link babushkatext.BabushkaText.Piece} in position index.
+     * Ends a batch started with {@link #beginBatch()}. If Pieces were modified during the batch,
+     * they are displayed on the next frame.
+     */
+    public void endBatch() {
+        if(mBatchDepth == 0) {
+            throw new IllegalStateException("endBatch() without beginBatch()");
+        }
+        mBatchDepth--;
+        if(mBatchDepth == 0 && mDisplayPending) {
+            requestDisplay();
+        }
+    }
+
+    /**
+     * When enabled, every modification of the Pieces of this view, including
+     * {@link Piece#setText(String)}, schedules a {@link #display()} on the next frame, so you
+     * don't have to call it yourself. However many modifications happen in a frame, the text is
+     * composed and laid out once.
      *
-     * @param location position of Piece (0 based)
-     * @return Piece o null if invalid index
+     * @param autoDisplay true to display modifications automatically
      */
-    public Piece getPiece(int location) {
-        if(location >= 0 && location < mPieces.size()) {
-            return mPieces.get(location);
+    public void setAutoDisplay(boolean autoDisplay) {
+        mAutoDisplay = autoDisplay;
+        if(autoDisplay && mDisplayPending && mBatchDepth == 0) {
+            requestDisplay();
         }
+    }
 
-        return null;
+    /**
+     * Schedules a {@link #display()} on the next frame. Calling this several times in a frame
+     * displays only once.
+     */
+    public void requestDisplay() {
+        mDisplayPending = true;
+        if(!mDisplayScheduled && mBatchDepth == 0) {
+            mDisplayScheduled = true;
+            ViewCompat.postOnAnimation(this, mDisplayRunnable);
+        }
     }
 
     /**
-     * Call this method when you're done adding {@link babushkatext.BabushkaText.Piece}s
-     * and want this TextView to display the final, styled version of it's String contents.
+     * Opens a stream of text updates for a Piece of this view. Producers on any thread push new
+     * values to the stream; only the latest value is displayed, at most
+     * {@link #setMaxStreamRate(int)} times per second, and intermediate values are dropped.
      *
-     * You MUST also call this method whenever you make a modification to the text of a Piece that
-     * has already been displayed.
+     * @param aPiece a Piece of this view
+     * @return the stream, to be closed when no longer needed
      */
-    public void display() {
+    public PieceStream openStream(Piece aPiece) {
+        PieceStream stream = new PieceStream(this, aPiece);
+        mStreams.add(stream);
+        return stream;
+    }
 
-        // generate the final string based on the pieces
-        StringBuilder builder = new StringBuilder();
-        for(Piece aPiece : mPieces) {
-            builder.append(aPiece.text);
+    void closeStream(PieceStream stream) {
+        if(mStreams.remove(stream)) {
+            mClosedStreamsReceived.addAndGet(stream.getReceivedCount());
+            mClosedStreamsApplied.addAndGet(stream.getAppliedCount());
         }
+    }
 
-        // apply spans
-        int cursor = 0;
-        SpannableString finalString = new SpannableString(builder.toString());
-        for(Piece aPiece : mPieces) {
-            applySpannablesTo(aPiece, finalString, cursor, cursor + aPiece.text.length());
-            cursor += aPiece.text.length();
+    /**
+     * Makes this view display a list of Pieces which producers on any thread modify. The view
+     * shows the latest snapshot of the list right away, then each new one at most
+     * {@link #setMaxStreamRate(int)} times per second, through {@link #setPieces(List)}.
+     *
+     * The Pieces of this view then follow the list: modify the list rather than the Pieces of
+     * this view, which are replaced by the next snapshot.
+     *
+     * @param pieces the list, or null to stop following the current one
+     */
+    public void setConcurrentPieces(ConcurrentPieces pieces) {
+        if(pieces == mConcurrentPieces) {
+            return;
+        }
+        if(mConcurrentPieces != null) {
+            mConcurrentPieces.attachTo(null);
         }
+        mConcurrentPieces = pieces;
+        if(pieces != null) {
+            pieces.attachTo(this);
+            setPieces(pieces.takeChanges());
+        }
+    }
 
-        // set the styled text
-        setText(finalString);
+    /**
+     * Displays a packed list of Pieces, which takes much less memory than Piece objects for long
+     * texts, instead of the Pieces of this view. The Pieces of this view are removed, and those
+     * added afterwards aren't displayed until the packed list is replaced with
+     * {@link #setPieces(List)}, {@link #bind(PieceModel)} or {@link #reset()}.
+     *
+     * Modifications of the packed list are displayed like those of Pieces, with
+     * {@link #display()} or automatically. Each display composes the whole list again.
+     *
+     * @param pieces the packed Pieces, or null to remove them
+     */
+    public void setPackedPieces(PackedPieces pieces) {
+        if(pieces == mPacked) {
+            return;
+        }
+        reset();
+        if(pieces != null) {
+            mPacked = pieces;
+            pieces.attachTo(this);
+            display();
+        }
+    }
+
+    /**
+     * @return the packed Pieces displayed by this view, or null
+     */
+    public PackedPieces getPackedPieces() {
+        return mPacked;
+    }
+
+    /**
+     * Called by the packed Pieces of this view when they changed.
+     */
+    void onPackedPiecesChanged() {
+        onPiecesChanged();
+    }
+
+    /**
+     * @return the list this view follows, see {@link #setConcurrentPieces(ConcurrentPieces)}
+     */
+    public ConcurrentPieces getConcurrentPieces() {
+        return mConcurrentPieces;
+    }
+
+    /**
+     * Sets how many times per second values pushed to the streams of this view are displayed.
+     *
+     * @param updatesPerSecond the maximum rate, between 1 and 1000
+     */
+    public void setMaxStreamRate(int updatesPerSecond) {
+        if(updatesPerSecond < 1 || updatesPerSecond > 1000) {
+            throw new IllegalArgumentException("updatesPerSecond must be between 1 and 1000");
+        }
+        mStreamInterval = 1000 / updatesPerSecond;
     }
 
-    private void applySpannablesTo(Piece aPiece, SpannableString finalString, int start, int end) {
+    /**
+     * @return the number of values pushed to the streams of this view, open or closed
+     */
+    public int getStreamReceivedCount() {
+        int count = mClosedStreamsReceived.get();
+        for(PieceStream stream : mStreams) {
+            count += stream.getReceivedCount();
+        }
+        return count;
+    }
 
-        if(aPiece.subscript) {
-            finalString.setSpan(new SubscriptSpan(), start, end,
-                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    /**
+     * @return the number of values of the streams of this view, open or closed, which were
+     * displayed. The others were dropped, replaced by a newer value before they could be.
+     */
+    public int getStreamAppliedCount() {
+        int count = mClosedStreamsApplied.get();
+        for(PieceStream stream : mStreams) {
+            count += stream.getAppliedCount();
         }
+        return count;
+    }
 
-        if(aPiece.superscript) {
-            finalString.setSpan(new SuperscriptSpan(), start, end,
-                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    /**
+     * Schedules the display of pushed values and concurrent snapshots, no sooner than the stream
+     * rate allows. Can be called from any thread.
+     */
+    void scheduleStreamDrain() {
+        if(mStreamDrainScheduled.compareAndSet(false, true)) {
+            long delay = mLastStreamDrain + mStreamInterval - SystemClock.uptimeMillis();
+            mHandler.postDelayed(mStreamDrainRunnable, Math.max(0, delay));
         }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
 
-        if(aPiece.strike) {
-            finalString.setSpan(new StrikethroughSpan(), start, end,
-                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        // posts again what was cancelled when this view was detached, or was posted before it
+        // was ever attached, once
+        if(mDisplayScheduled) {
+            removeCallbacks(mDisplayRunnable);
+            ViewCompat.postOnAnimation(this, mDisplayRunnable);
+        }
+        if(mHighlightScheduled) {
+            removeCallbacks(mHighlightRunnable);
+            ViewCompat.postOnAnimation(this, mHighlightRunnable);
+        }
+        if(mStreamDrainScheduled.get()) {
+            mHandler.removeCallbacks(mStreamDrainRunnable);
+            mHandler.post(mStreamDrainRunnable);
         }
+    }
 
-        if(aPiece.underline) {
-            finalString.setSpan(new UnderlineSpan(), start, end,
-                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    @Override
+    protected void onDetachedFromWindow() {
+        // the scheduled flags stay set, so that nothing is posted until this view is attached again
+        removeCallbacks(mDisplayRunnable);
+        if(mHighlightRunnable != null) {
+            removeCallbacks(mHighlightRunnable);
         }
+        mHandler.removeCallbacks(mStreamDrainRunnable);
+        super.onDetachedFromWindow();
+    }
 
-        // style
-        finalString.setSpan(new StyleSpan(aPiece.style), start, end,
-                Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    private void drainStreams() {
+        mLastStreamDrain = SystemClock.uptimeMillis();
 
-        // absolute text size
-        finalString.setSpan(new AbsoluteSizeSpan(aPiece.textSize), start, end,
-                Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        // values pushed from now on need another drain
+        mStreamDrainScheduled.set(false);
 
-        // relative text size
-        finalString.setSpan(new RelativeSizeSpan(aPiece.textSizeRelative), start, end,
-                Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        boolean changed = false;
+        for(PieceStream stream : mStreams) {
+            // Pieces no longer in this view are left alone
+            if(stream.getPiece().owner == this) {
+                changed |= stream.apply();
+            }
+        }
 
-        // text color
-        finalString.setSpan(new ForegroundColorSpan(aPiece.textColor), start, end,
-                Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        List<Piece> snapshot = mConcurrentPieces != null ? mConcurrentPieces.takeChanges() : null;
+        if(snapshot != null) {
+            // displays the streamed values as well
+            setPieces(snapshot);
+        } else if(changed && mBatchDepth == 0) {
+            display();
+        }
+    }
 
-        // background color
-        if(aPiece.backgroundColor != -1) {
-            finalString.setSpan(new BackgroundColorSpan(aPiece.backgroundColor), start, end,
-                    Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    /**
+     * Called by a Piece of this view when its text or color changed.
+     */
+    private void onPieceModified(Piece aPiece) {
+        if(aPiece.node != null) {
+            mTree.markPending(aPiece.node);
         }
+        onPiecesChanged();
     }
 
     /**
-     * Resets the styling of this view and sets it's content to an empty String.
+     * Called whenever the Pieces of this view, or a Piece itself, changed.
      */
-    public void reset() {
-        mPieces = new ArrayList<>();
-        setText("");
+    private void onPiecesChanged() {
+        if(mBatchDepth > 0) {
+            mDisplayPending = true;
+        } else if(mAutoDisplay) {
+            requestDisplay();
+        }
+    }
+
+    private void release(Piece aPiece) {
+        if(aPiece.owner == this) {
+            aPiece.owner = null;
+        }
     }
 
     /**
-    * Change text color of all pieces of textview.
-    */
-    public void changeTextColor(int textColor) {
-        for (Piece mPiece : mPieces) {
-            mPiece.setTextColor(textColor);
+     * The saved Pieces of a BabushkaText, encoded by {@link PieceCodec}.
+     */
+    public static class SavedState extends BaseSavedState {
+
+        public static final Parcelable.Creator<SavedState> CREATOR
+                = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+
+        private byte[] pieces;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            pieces = in.createByteArray();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeByteArray(pieces);
+        }
+    }
+
+    /**
+     * Book-keeping of a Piece written into the displayed buffer: how long it was and which
+     * modification of the Piece it reflects.
+     */
+    private static class DisplayedPiece {
+
+        private int length;
+        private int modCount;
+        private boolean inserted;
+
+        DisplayedPiece(Piece piece) {
+            this(piece.text.length(), piece.modCount);
+        }
+
+        DisplayedPiece(int length, int modCount) {
+            this.length = length;
+            this.modCount = modCount;
         }
-        display();
     }
 
     /**
@@ -236,10 +2464,16 @@ public class BabushkaText extends TextView {
      */
     public static class Piece {
 
-        private String text;
+        // some default params
+        private static int DEFAULT_ABSOLUTE_TEXT_SIZE;
+        private static float DEFAULT_RELATIVE_TEXT_SIZE = 1;
+
+        private CharSequence text;
         private int textColor;
-        private final int textSize;
-        private final int backgroundColor;
+        private int textSize;
+        // false if the text size was left to the default, rather than set on the Builder
+        private final boolean hasTextSize;
+        private int backgroundColor;
         private final float textSizeRelative;
         private final int style;
         private final boolean underline;
@@ -247,9 +2481,24 @@ public class BabushkaText extends TextView {
         private final boolean strike;
         private final boolean subscript;
 
+        // incremented on every modification, so a BabushkaText can tell which Pieces are dirty
+        private int modCount;
+
+        // the BabushkaText this Piece was last added to, told about modifications
+        private BabushkaText owner;
+
+        // the position of this Piece in its owner, as of the last time it was numbered
+        private int index;
+
+        // the node holding this Piece while its owner is in large document mode
+        PieceTree.Node node;
+
+        private final String key;
+
         public Piece(Builder builder) {
-            this.text = builder.text;
+            setTextInternal(builder.text);
             this.textSize = builder.textSize;
+            this.hasTextSize = builder.hasTextSize;
             this.textColor = builder.textColor;
             this.backgroundColor = builder.backgroundColor;
             this.textSizeRelative = builder.textSizeRelative;
@@ -257,6 +2506,7 @@ public class BabushkaText extends TextView {
             this.underline = builder.underline;
             this.superscript = builder.superscript;
             this.subscript = builder.subscript;
+            this.key = builder.key;
             this.strike = builder.strike;
         }
 
@@ -265,14 +2515,38 @@ public class BabushkaText extends TextView {
          * {@link babushkatext.BabushkaText.Piece.Builder}.
          *
          * Use this method if you want to modify the text of an existing Piece that is already
-         * displayed. After doing so, you MUST call {@code display()} for the changes to show up.
+         * displayed. After doing so, you MUST call {@code display()} for the changes to show up,
+         * unless its BabushkaText displays modifications automatically.
+         *
+         * The text is read when the Piece is displayed and not copied, so don't modify a mutable
+         * CharSequence afterwards, set it again instead. A {@link babushkatext.NumberText} tells
+         * its Piece about new values by itself.
          *
          * @param text the text to display
          */
-        public void setText(String text) {
+        public void setText(CharSequence text) {
+            setTextInternal(text);
+            onTextModified();
+        }
+
+        private void setTextInternal(CharSequence text) {
             this.text = text;
+            if(text instanceof NumberText) {
+                ((NumberText) text).attachTo(this);
+            }
         }
 
+        /**
+         * Called when the text of this Piece changed, whether it was set or modified in place.
+         */
+        void onTextModified() {
+            modCount++;
+            notifyOwner();
+        }
+
+        int getModCount() {
+            return modCount;
+        }
 
         /**
          * Sets the text color of this Piece. If you're creating a new Piece, you should do so using it's
@@ -285,18 +2559,164 @@ public class BabushkaText extends TextView {
          */
 		public void setTextColor(int textColor) {
         	this.textColor = textColor;
+        	modCount++;
+        	notifyOwner();
     	}
 
+        private void notifyOwner() {
+            if(owner != null) {
+                owner.onPieceModified(this);
+            }
+        }
+
+        /**
+         * @return a new Piece with the same text and attributes, its text frozen into a String
+         */
+        Piece copy() {
+            Builder builder = new Builder(text.toString());
+            builder.textSize = textSize;
+            builder.hasTextSize = hasTextSize;
+            builder.textColor = textColor;
+            builder.backgroundColor = backgroundColor;
+            builder.textSizeRelative = textSizeRelative;
+            builder.style = style;
+            builder.underline = underline;
+            builder.strike = strike;
+            builder.superscript = superscript;
+            builder.subscript = subscript;
+            builder.key = key;
+            return builder.build();
+        }
+
+        /**
+         * @return true if the other Piece shows the same text with the same attributes. Pieces
+         * are mutable, so this is deliberately not equals().
+         */
+        boolean sameContentAs(Piece other) {
+            return textSize == other.textSize
+                    && textColor == other.textColor
+                    && backgroundColor == other.backgroundColor
+                    && Float.compare(textSizeRelative, other.textSizeRelative) == 0
+                    && style == other.style
+                    && underline == other.underline
+                    && strike == other.strike
+                    && superscript == other.superscript
+                    && subscript == other.subscript
+                    && TextUtils.equals(text, other.text);
+        }
+
+        /**
+         * @return a hash of the text and attributes of this Piece, consistent with
+         * {@link #sameContentAs(Piece)}
+         */
+        int contentHashCode() {
+            int hash = 0;
+            for(int i = 0; i < text.length(); i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            hash = 31 * hash + textSize;
+            hash = 31 * hash + textColor;
+            hash = 31 * hash + backgroundColor;
+            hash = 31 * hash + Float.floatToIntBits(textSizeRelative);
+            hash = 31 * hash + style;
+            hash = 31 * hash + (underline ? 1 : 0);
+            hash = 31 * hash + (strike ? 2 : 0);
+            hash = 31 * hash + (superscript ? 4 : 0);
+            hash = 31 * hash + (subscript ? 8 : 0);
+            return hash;
+        }
+
+        /**
+         * @return the absolute text size Pieces get unless one is set on their Builder
+         */
+        static int getDefaultTextSize() {
+            return DEFAULT_ABSOLUTE_TEXT_SIZE;
+        }
+
+        /**
+         * @return the text of this Piece
+         */
+        public CharSequence getText() {
+            return text;
+        }
+
+        /**
+         * @return the text color of this Piece
+         */
+        public int getTextColor() {
+            return textColor;
+        }
+
+        /**
+         * @return the absolute text size of this Piece, in pixels
+         */
+        public int getTextSize() {
+            return textSize;
+        }
+
+        /**
+         * @return true if the text size was set on the Builder, false if this Piece has the
+         * default one
+         */
+        boolean hasTextSize() {
+            return hasTextSize;
+        }
+
+        /**
+         * @return the background color of this Piece, or -1 if it has none
+         */
+        public int getBackgroundColor() {
+            return backgroundColor;
+        }
+
+        /**
+         * @return the relative text size of this Piece
+         */
+        public float getTextSizeRelative() {
+            return textSizeRelative;
+        }
+
+        /**
+         * @return the style of this Piece, see {@link android.graphics.Typeface}
+         */
+        public int getStyle() {
+            return style;
+        }
+
+        public boolean isUnderline() {
+            return underline;
+        }
+
+        public boolean isSuperscript() {
+            return superscript;
+        }
+
+        public boolean isStrike() {
+            return strike;
+        }
+
+        public boolean isSubscript() {
+            return subscript;
+        }
+
+        /**
+         * @return the key of this Piece, or null if it has none
+         */
+        public String getKey() {
+            return key;
+        }
+
         /**
          * Builder of Pieces
          */
         public static class Builder {
 
             // required
-            private final String text;
+            private final CharSequence text;
 
             // optional
             private int textSize = DEFAULT_ABSOLUTE_TEXT_SIZE;
+            private boolean hasTextSize = false;
             private int textColor = Color.BLACK;
             private int backgroundColor = -1;
             private float textSizeRelative = DEFAULT_RELATIVE_TEXT_SIZE;
@@ -305,13 +2725,14 @@ public class BabushkaText extends TextView {
             private boolean strike = false;
             private boolean superscript = false;
             private boolean subscript = false;
+            private String key;
 
             /**
              * Creates a new Builder for this Piece.
              *
              * @param text the text of this Piece
              */
-            public Builder(String text) {
+            public Builder(CharSequence text) {
                 this.text = text;
             }
 
@@ -323,6 +2744,7 @@ public class BabushkaText extends TextView {
              */
             public Builder textSize(int textSize) {
                 this.textSize = textSize;
+                this.hasTextSize = true;
                 return this;
             }
 
@@ -410,6 +2832,18 @@ public class BabushkaText extends TextView {
                 return this;
             }
 
+            /**
+             * Sets a key identifying this Piece within a BabushkaText, so it can be found,
+             * replaced or removed without tracking its position.
+             *
+             * @param key the key, unique within the BabushkaText
+             * @return a Builder
+             */
+            public Builder key(String key) {
+                this.key = key;
+                return this;
+            }
+
             /**
              * Creates a {@link babushkatext.BabushkaText.Piece} with the customized
              * parameters.
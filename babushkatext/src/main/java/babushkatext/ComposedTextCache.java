@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process-wide cache of the styled text composed for {@link PieceModel}s, so binding a model
+ * seen before to a {@link BabushkaText} doesn't compose it again, whichever view showed it.
+ *
+ * The cache is bounded by the total number of characters it holds and evicts the least recently
+ * used texts first. Text composed for a model depends on the text size and color of the view, so
+ * views with different ones get separate entries.
+ */
+public final class ComposedTextCache {
+
+    // about 128 KiB of characters, plus their spans
+    private static final int DEFAULT_MAX_SIZE = 64 * 1024;
+
+    private static final ComposedTextCache INSTANCE = new ComposedTextCache(DEFAULT_MAX_SIZE);
+
+    private final LinkedHashMap<Key, PrecomputedPieces> mTexts;
+
+    // reused for lookups so a hit doesn't allocate
+    private final Key mLookupKey = new Key(null, 0, 0, false);
+
+    private int mSize;
+    private int mMaxSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    private ComposedTextCache(int maxSize) {
+        mMaxSize = maxSize;
+        mTexts = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return the cache shared by every BabushkaText in this process
+     */
+    public static ComposedTextCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the text composed for a model and a view, composing and caching it if needed. Can be
+     * called from any thread, e.g. to fill the cache ahead of binding.
+     *
+     * @param model the model to compose
+     * @param params the parameters of the view, see {@link BabushkaText#getPrecomputeParams()}
+     * @return the text composed for the model
+     */
+    public PrecomputedPieces obtain(PieceModel model, PrecomputedPieces.Params params) {
+        synchronized(this) {
+            mLookupKey.set(model, params.getTextSize(), params.getTextColor(),
+                    params.hasTextColor());
+            PrecomputedPieces text = mTexts.get(mLookupKey);
+            mLookupKey.set(null, 0, 0, false);
+            if(text != null) {
+                mHitCount++;
+                return text;
+            }
+            mMissCount++;
+        }
+
+        // compose without holding the lock, so other views aren't blocked meanwhile
+        PrecomputedPieces text = PrecomputedPieces.create(model.getPieces(), params);
+
+        synchronized(this) {
+            Key key = new Key(model, params.getTextSize(), params.getTextColor(),
+                    params.hasTextColor());
+            PrecomputedPieces previous = mTexts.get(key);
+            if(previous != null) {
+                // composed by another thread in the meantime, keep the first one
+                return previous;
+            }
+            mTexts.put(key, text);
+            mSize += sizeOf(model);
+            trimToSize(mMaxSize);
+        }
+        return text;
+    }
+
+    /**
+     * Sets the maximum number of characters cached, evicting the least recently used texts if
+     * needed.
+     *
+     * @param maxSize the maximum number of characters, must be positive
+     */
+    public synchronized void resize(int maxSize) {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Drops every cached text.
+     */
+    public synchronized void evictAll() {
+        mEvictionCount += mTexts.size();
+        mTexts.clear();
+        mSize = 0;
+    }
+
+    /**
+     * @return the number of characters currently cached
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the maximum number of characters this cache holds
+     */
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the number of times a cached text was reused
+     */
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of times a text had to be composed and cached
+     */
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the number of texts dropped to respect the maximum size
+     */
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @return the share of lookups which found a cached text, between 0 and 1
+     */
+    public synchronized float hitRate() {
+        int accesses = mHitCount + mMissCount;
+        return accesses != 0 ? (float) mHitCount / accesses : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ComposedTextCache[size=" + mSize + ",maxSize=" + mMaxSize + ",hits=" + mHitCount
+                + ",misses=" + mMissCount + ",evictions=" + mEvictionCount
+                + ",hitRate=" + (int) (100 * hitRate()) + "%]";
+    }
+
+    /**
+     * Evicts the least recently used texts until the cache holds at most maxSize characters.
+     * The most recent text is kept even if it is bigger on its own.
+     */
+    private void trimToSize(int maxSize) {
+        Iterator<Map.Entry<Key, PrecomputedPieces>> entries = mTexts.entrySet().iterator();
+        while(mSize > maxSize && mTexts.size() > 1 && entries.hasNext()) {
+            Map.Entry<Key, PrecomputedPieces> eldest = entries.next();
+            mSize -= sizeOf(eldest.getKey().model);
+            entries.remove();
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Empty models still cost an entry, so they count as one character.
+     */
+    private static int sizeOf(PieceModel model) {
+        return model.length() + 1;
+    }
+
+    private static final class Key {
+
+        private PieceModel model;
+        private int textSize;
+        private int textColor;
+        private boolean hasTextColor;
+
+        Key(PieceModel model, int textSize, int textColor, boolean hasTextColor) {
+            set(model, textSize, textColor, hasTextColor);
+        }
+
+        void set(PieceModel model, int textSize, int textColor, boolean hasTextColor) {
+            this.model = model;
+            this.textSize = textSize;
+            // without a view color, every Piece gets its own color span whatever the view's
+            this.textColor = hasTextColor ? textColor : 0;
+            this.hasTextColor = hasTextColor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return textSize == other.textSize
+                    && textColor == other.textColor
+                    && hasTextColor == other.hasTextColor
+                    && model.equals(other.model);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = model.hashCode();
+            hash = 31 * hash + textSize;
+            hash = 31 * hash + textColor;
+            return 31 * hash + (hasTextColor ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * Composes a list of Pieces into a {@link Composition}. This is the part of
+ * {@link BabushkaText#display()} that doesn't depend on Android: it only uses plain Java, so it can
+ * run on any thread and on a desktop JVM, e.g. to profile or benchmark it.
+ *
+ * A Composer reuses its scratch space between calls, so it must not be used by several threads
+ * at once. Create one per thread instead.
+ */
+public final class Composer {
+
+    private final SpanPlanner mPlanner = new SpanPlanner();
+    private final SpanPlan mPlan = new SpanPlan();
+
+    /**
+     * Creates a Composer which considers the default Piece text size as the text size of the
+     * view, and gives every Piece a text color span.
+     */
+    public Composer() {
+        setDefaults(Piece.getDefaultTextSize(), 0, false);
+    }
+
+    /**
+     * Sets the defaults of the view the text is composed for. Attributes with these values need
+     * no span.
+     *
+     * @param textSize the text size of the view, in pixels
+     * @param textColor the text color of the view
+     * @param hasTextColor false if the view's color depends on its state, in which case every
+     *                     Piece gets its own color span
+     * @return true if the defaults changed
+     */
+    public boolean setDefaults(int textSize, int textColor, boolean hasTextColor) {
+        return mPlanner.setDefaults(textSize, textColor, hasTextColor);
+    }
+
+    /**
+     * Concatenates the text of the Pieces and works out the runs styling it.
+     *
+     * @param pieces the Pieces to compose, in display order
+     * @return the composed text
+     */
+    public Composition compose(List<Piece> pieces) {
+        int count = pieces.size();
+        int[] offsets = new int[count + 1];
+
+        int length = 0;
+        for(int i = 0; i < count; i++) {
+            offsets[i] = length;
+            length += pieces.get(i).getText().length();
+        }
+        offsets[count] = length;
+
+        char[] text = new char[length];
+        for(int i = 0; i < count; i++) {
+            getChars(pieces.get(i).getText(), text, offsets[i]);
+        }
+
+        mPlanner.plan(pieces, mPlan);
+        Composition composition = new Composition(text, offsets, mPlan);
+        mPlan.clear();
+        return composition;
+    }
+
+    /**
+     * Concatenates the text of packed Pieces and works out the runs styling it.
+     *
+     * @param pieces the Pieces to compose
+     * @return the composed text
+     */
+    public Composition compose(PackedPieces pieces) {
+        int count = pieces.size();
+        int[] offsets = new int[count + 1];
+        char[] text = new char[pieces.length()];
+
+        int length = 0;
+        for(int i = 0; i < count; i++) {
+            offsets[i] = length;
+            pieces.getChars(i, text, length);
+            length += pieces.getTextLength(i);
+        }
+        offsets[count] = length;
+
+        mPlanner.plan(pieces.getAttributes(), mPlan);
+        Composition composition = new Composition(text, offsets, mPlan);
+        mPlan.clear();
+        return composition;
+    }
+
+    /**
+     * Composes Pieces encoded by {@link PieceCodec} straight from the buffer, without building
+     * them: their texts are copied from the buffer into the composed text in one go, and their
+     * attributes are read in place. The buffer is moved past the Pieces.
+     *
+     * @param encoded the buffer, at the start of the encoded Pieces
+     * @return the composed text
+     * @throws IllegalArgumentException if the buffer doesn't hold encoded Pieces
+     */
+    public Composition compose(ByteBuffer encoded) {
+        PieceCodec.Records pieces = PieceCodec.read(encoded);
+        int count = pieces.size();
+        int[] offsets = new int[count + 1];
+        char[] text = new char[pieces.getTextLength()];
+        pieces.getText(text);
+
+        int length = 0;
+        for(int i = 0; i < count; i++) {
+            offsets[i] = length;
+            length += pieces.getTextLength(i);
+        }
+        offsets[count] = length;
+
+        mPlanner.plan(pieces, mPlan);
+        Composition composition = new Composition(text, offsets, mPlan);
+        mPlan.clear();
+        return composition;
+    }
+
+    /**
+     * Copies the characters of a text into an array without calling toString(), so mutable texts
+     * such as {@link NumberText} aren't turned into a String first.
+     */
+    static void getChars(CharSequence source, char[] dest, int destOffset) {
+        int length = source.length();
+        if(source instanceof String) {
+            ((String) source).getChars(0, length, dest, destOffset);
+        } else if(source instanceof NumberText) {
+            ((NumberText) source).getChars(0, length, dest, destOffset);
+        } else if(source instanceof StringBuilder) {
+            ((StringBuilder) source).getChars(0, length, dest, destOffset);
+        } else if(source instanceof Composition) {
+            ((Composition) source).getChars(0, length, dest, destOffset);
+        } else {
+            for(int i = 0; i < length; i++) {
+                dest[destOffset + i] = source.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * @return true if this attribute value of a Piece needs a span, being different from the
+     * defaults
+     */
+    boolean needsSpan(int kind, int value) {
+        return !mPlanner.isDefault(kind, value);
+    }
+
+    /**
+     * Plans the runs styling these Pieces, by Piece rather than by character.
+     */
+    void plan(List<Piece> pieces, SpanPlan plan) {
+        mPlanner.plan(pieces, plan);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+/**
+ * The platform independent result of composing a list of Pieces: their concatenated text, where
+ * each Piece starts, and the styling as an array of runs. Each run applies one attribute (one of
+ * the kinds below) with one value to a range of the text.
+ *
+ * A Composition is immutable, so it can be cached, shared between threads and handed to any
+ * renderer. {@link SpannableAdapter} turns one into an Android {@link android.text.Spannable}.
+ *
+ * Compositions are created by a {@link Composer}.
+ */
+public final class Composition implements CharSequence {
+
+    // kinds of runs, in the order their spans are applied to the text
+    public static final int SUBSCRIPT = 0;
+    public static final int SUPERSCRIPT = 1;
+    public static final int STRIKE = 2;
+    public static final int UNDERLINE = 3;
+    public static final int STYLE = 4;
+    public static final int ABSOLUTE_SIZE = 5;
+    public static final int RELATIVE_SIZE = 6;
+    public static final int TEXT_COLOR = 7;
+    public static final int BACKGROUND_COLOR = 8;
+    public static final int KIND_COUNT = 9;
+
+    private final char[] mText;
+    private final int[] mPieceOffsets;
+    private final int[] mRunKinds;
+    private final int[] mRunValues;
+    private final int[] mRunFirstPieces;
+    private final int[] mRunLastPieces;
+
+    /**
+     * @param text the concatenated text, owned by the Composition from now on
+     * @param pieceOffsets where each Piece starts, followed by the length of the text
+     */
+    Composition(char[] text, int[] pieceOffsets, SpanPlan plan) {
+        mText = text;
+        mPieceOffsets = pieceOffsets;
+
+        int runCount = plan.size();
+        mRunKinds = new int[runCount];
+        mRunValues = new int[runCount];
+        mRunFirstPieces = new int[runCount];
+        mRunLastPieces = new int[runCount];
+        for(int run = 0; run < runCount; run++) {
+            mRunKinds[run] = plan.kindAt(run);
+            mRunValues[run] = plan.valueAt(run);
+            mRunFirstPieces[run] = plan.firstPieceAt(run);
+            mRunLastPieces[run] = plan.lastPieceAt(run);
+        }
+    }
+
+    /**
+     * @return the number of Pieces this was composed from
+     */
+    public int getPieceCount() {
+        return mPieceOffsets.length - 1;
+    }
+
+    /**
+     * @return where the text of a Piece starts
+     */
+    public int getPieceStart(int piece) {
+        return mPieceOffsets[piece];
+    }
+
+    /**
+     * @return where the text of a Piece ends
+     */
+    public int getPieceEnd(int piece) {
+        return mPieceOffsets[piece + 1];
+    }
+
+    /**
+     * @return the number of runs styling the text
+     */
+    public int getRunCount() {
+        return mRunKinds.length;
+    }
+
+    /**
+     * @return the kind of a run, one of the constants of this class
+     */
+    public int getRunKind(int run) {
+        return mRunKinds[run];
+    }
+
+    /**
+     * @return the value of a run: a color, a pixel size, a {@link android.graphics.Typeface}
+     * style, the bits of a relative size (see {@link Float#intBitsToFloat(int)}) or 1 for on/off
+     * styles such as underline.
+     */
+    public int getRunValue(int run) {
+        return mRunValues[run];
+    }
+
+    /**
+     * @return the offset of the first character of a run
+     */
+    public int getRunStart(int run) {
+        return mPieceOffsets[mRunFirstPieces[run]];
+    }
+
+    /**
+     * @return the offset after the last character of a run
+     */
+    public int getRunEnd(int run) {
+        return mPieceOffsets[mRunLastPieces[run] + 1];
+    }
+
+    /**
+     * Copies the runs, with the Pieces they cover, into a plan.
+     */
+    void copyRunsTo(SpanPlan plan) {
+        plan.clear();
+        for(int run = 0; run < mRunKinds.length; run++) {
+            plan.add(mRunKinds[run], mRunValues[run], mRunFirstPieces[run], mRunLastPieces[run]);
+        }
+    }
+
+    /**
+     * Copies where each Piece starts, followed by the length of the text.
+     */
+    void copyPieceOffsetsTo(int[] offsets) {
+        System.arraycopy(mPieceOffsets, 0, offsets, 0, mPieceOffsets.length);
+    }
+
+    /**
+     * Copies characters of the text into an array, without going through a String.
+     */
+    public void getChars(int start, int end, char[] dest, int destOffset) {
+        System.arraycopy(mText, start, dest, destOffset, end - start);
+    }
+
+    @Override
+    public int length() {
+        return mText.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return mText[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(mText, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(mText);
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * A list of Pieces which producers on any thread can modify, such as a feed parsed in the
+ * background, displayed by a {@link BabushkaText} through
+ * {@link BabushkaText#setConcurrentPieces(ConcurrentPieces)}.
+ *
+ * The list is copy-on-write: each modification publishes a new immutable snapshot, holding private
+ * copies of the Pieces given to it. The view never sees a half-made modification. It displays the
+ * latest snapshot on the UI thread, at most {@link BabushkaText#setMaxStreamRate(int)} times per
+ * second, editing only the text of the Pieces which changed since the previous one.
+ *
+ * Writers are serialized, so modifications from several threads are applied one after the other.
+ * Reading, from {@link #size()} or {@link #snapshot()}, never blocks.
+ */
+public final class ConcurrentPieces {
+
+    private static final Piece[] EMPTY = new Piece[0];
+
+    // the latest snapshot, replaced rather than modified; its Pieces are never modified either
+    private volatile Piece[] mSnapshot = EMPTY;
+    private final Object mWriteLock = new Object();
+
+    private volatile BabushkaText mView;
+
+    // used on the UI thread only: the snapshot last displayed, and the Pieces showing it
+    private Piece[] mTaken;
+    private Map<Piece, Piece> mShown = new IdentityHashMap<>();
+
+    /**
+     * Appends a copy of a Piece to the list.
+     *
+     * @param aPiece the Piece, whose later modifications don't affect the list
+     */
+    public void add(Piece aPiece) {
+        synchronized(mWriteLock) {
+            add(mSnapshot.length, aPiece);
+        }
+    }
+
+    /**
+     * Inserts a copy of a Piece into the list.
+     *
+     * @param location the position of the new Piece
+     * @param aPiece the Piece, whose later modifications don't affect the list
+     */
+    public void add(int location, Piece aPiece) {
+        Piece frozen = aPiece.copy();
+        synchronized(mWriteLock) {
+            Piece[] snapshot = mSnapshot;
+            checkPosition(location, snapshot.length + 1);
+            checkKey(snapshot, frozen, -1);
+            Piece[] updated = new Piece[snapshot.length + 1];
+            System.arraycopy(snapshot, 0, updated, 0, location);
+            updated[location] = frozen;
+            System.arraycopy(snapshot, location, updated, location + 1,
+                    snapshot.length - location);
+            publish(updated);
+        }
+    }
+
+    /**
+     * Replaces a Piece of the list with a copy of another one.
+     *
+     * @param location the position of the Piece to replace
+     * @param aPiece the new Piece, whose later modifications don't affect the list
+     */
+    public void set(int location, Piece aPiece) {
+        Piece frozen = aPiece.copy();
+        synchronized(mWriteLock) {
+            Piece[] snapshot = mSnapshot;
+            checkPosition(location, snapshot.length);
+            checkKey(snapshot, frozen, location);
+            Piece[] updated = snapshot.clone();
+            updated[location] = frozen;
+            publish(updated);
+        }
+    }
+
+    /**
+     * Changes the text of a Piece of the list.
+     *
+     * @param location the position of the Piece
+     * @param text the new text, copied
+     */
+    public void setText(int location, CharSequence text) {
+        String copy = text.toString();
+        synchronized(mWriteLock) {
+            Piece[] snapshot = mSnapshot;
+            checkPosition(location, snapshot.length);
+            Piece frozen = snapshot[location].copy();
+            frozen.setText(copy);
+            Piece[] updated = snapshot.clone();
+            updated[location] = frozen;
+            publish(updated);
+        }
+    }
+
+    /**
+     * Changes the text of the Piece with this key.
+     *
+     * @param key the key of the Piece
+     * @param text the new text, copied
+     * @return false if no Piece has this key
+     */
+    public boolean setText(String key, CharSequence text) {
+        synchronized(mWriteLock) {
+            int location = indexOf(key);
+            if(location < 0) {
+                return false;
+            }
+            setText(location, text);
+            return true;
+        }
+    }
+
+    /**
+     * Changes the text color of a Piece of the list.
+     *
+     * @param location the position of the Piece
+     * @param textColor the new text color
+     */
+    public void setTextColor(int location, int textColor) {
+        synchronized(mWriteLock) {
+            Piece[] snapshot = mSnapshot;
+            checkPosition(location, snapshot.length);
+            Piece frozen = snapshot[location].copy();
+            frozen.setTextColor(textColor);
+            Piece[] updated = snapshot.clone();
+            updated[location] = frozen;
+            publish(updated);
+        }
+    }
+
+    /**
+     * Removes a Piece from the list.
+     *
+     * @param location the position of the Piece
+     */
+    public void remove(int location) {
+        synchronized(mWriteLock) {
+            Piece[] snapshot = mSnapshot;
+            checkPosition(location, snapshot.length);
+            Piece[] updated = new Piece[snapshot.length - 1];
+            System.arraycopy(snapshot, 0, updated, 0, location);
+            System.arraycopy(snapshot, location + 1, updated, location,
+                    snapshot.length - location - 1);
+            publish(updated);
+        }
+    }
+
+    /**
+     * Replaces the whole list with copies of these Pieces.
+     *
+     * @param pieces the new Pieces, in display order
+     */
+    public void setAll(List<Piece> pieces) {
+        Piece[] updated = new Piece[pieces.size()];
+        Set<String> keys = new HashSet<>();
+        for(int i = 0; i < updated.length; i++) {
+            Piece frozen = pieces.get(i).copy();
+            String key = frozen.getKey();
+            if(key != null && !keys.add(key)) {
+                throw new IllegalArgumentException("Duplicate Piece key " + key);
+            }
+            updated[i] = frozen;
+        }
+        synchronized(mWriteLock) {
+            publish(updated);
+        }
+    }
+
+    /**
+     * Removes every Piece from the list.
+     */
+    public void clear() {
+        synchronized(mWriteLock) {
+            publish(EMPTY);
+        }
+    }
+
+    /**
+     * @return the number of Pieces of the latest snapshot
+     */
+    public int size() {
+        return mSnapshot.length;
+    }
+
+    /**
+     * @param key a key
+     * @return the position of the Piece with this key in the latest snapshot, or -1 if none
+     */
+    public int indexOf(String key) {
+        Piece[] snapshot = mSnapshot;
+        for(int i = 0; i < snapshot.length; i++) {
+            if(key.equals(snapshot[i].getKey())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the latest snapshot of the list, as an immutable model
+     */
+    public PieceModel snapshot() {
+        List<Piece> pieces = new ArrayList<>(mSnapshot.length);
+        for(Piece frozen : mSnapshot) {
+            pieces.add(frozen);
+        }
+        return PieceModel.of(pieces);
+    }
+
+    /**
+     * Called when this list starts or stops being displayed by a view. Only called on the UI
+     * thread.
+     */
+    void attachTo(BabushkaText view) {
+        mView = view;
+        mTaken = null;
+        mShown.clear();
+    }
+
+    /**
+     * Returns the Pieces to display for the latest snapshot. Pieces which were in the previous
+     * snapshot as well are the same instances as last time, so the view keeps their displayed
+     * text as is. Only called on the UI thread.
+     *
+     * @return the Pieces, or null if there's no new snapshot
+     */
+    List<Piece> takeChanges() {
+        Piece[] snapshot = mSnapshot;
+        if(snapshot == mTaken) {
+            return null;
+        }
+        Map<Piece, Piece> shown = new IdentityHashMap<>(snapshot.length);
+        List<Piece> pieces = new ArrayList<>(snapshot.length);
+        for(Piece frozen : snapshot) {
+            Piece aPiece = mShown.get(frozen);
+            if(aPiece == null) {
+                aPiece = frozen.copy();
+            }
+            shown.put(frozen, aPiece);
+            pieces.add(aPiece);
+        }
+        mTaken = snapshot;
+        mShown = shown;
+        return pieces;
+    }
+
+    /**
+     * Makes a new snapshot visible to readers and schedules its display. Called with the write
+     * lock held.
+     */
+    private void publish(Piece[] snapshot) {
+        mSnapshot = snapshot;
+        BabushkaText view = mView;
+        if(view != null) {
+            view.scheduleStreamDrain();
+        }
+    }
+
+    private static void checkPosition(int location, int size) {
+        if(location < 0 || location >= size) {
+            throw new IndexOutOfBoundsException("location " + location + ", size " + size);
+        }
+    }
+
+    /**
+     * Rejects a Piece whose key is already used by another Piece of the snapshot than the one at
+     * the replaced position.
+     */
+    private static void checkKey(Piece[] snapshot, Piece aPiece, int replaced) {
+        String key = aPiece.getKey();
+        if(key == null) {
+            return;
+        }
+        for(int i = 0; i < snapshot.length; i++) {
+            if(i != replaced && snapshot[i] != null && key.equals(snapshot[i].getKey())) {
+                throw new IllegalArgumentException("Duplicate Piece key " + key);
+            }
+        }
+    }
+}
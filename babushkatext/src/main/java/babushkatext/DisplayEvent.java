@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+/**
+ * What one call to {@link BabushkaText#display()}, or to a method showing other Pieces such as
+ * {@link BabushkaText#setPieces(java.util.List)} or a bind, did: how it displayed the Pieces, how
+ * long it took, how much text and how many spans it wrote, and whether the view has to be laid
+ * out again.
+ *
+ * A view hands the same instance to every listener, and fills it again on its next display, so
+ * listeners must copy what they need rather than keep the event.
+ */
+public final class DisplayEvent {
+
+    /**
+     * The text was composed from scratch.
+     */
+    public static final int REBUILD = 0;
+
+    /**
+     * The text of the modified Pieces was edited in place.
+     */
+    public static final int UPDATE = 1;
+
+    /**
+     * The text was composed from scratch in large document mode.
+     */
+    public static final int REBUILD_LARGE = 2;
+
+    /**
+     * The text of the modified Pieces was edited in place in large document mode.
+     */
+    public static final int UPDATE_LARGE = 3;
+
+    /**
+     * Packed Pieces were composed from scratch.
+     */
+    public static final int PACKED = 4;
+
+    /**
+     * A template, a model, precomputed text or encoded Pieces were shown instead of the Pieces of
+     * the view.
+     */
+    public static final int BIND = 5;
+
+    /**
+     * The values of the template bound again which changed were replaced in place.
+     */
+    public static final int REBIND = 6;
+
+    BabushkaText view;
+    int kind;
+    long durationNanos;
+    int pieceCount;
+    int spanCount;
+    int charactersWritten;
+    int spansWritten;
+    boolean relayout;
+    boolean relayoutAvoided;
+
+    DisplayEvent() {
+    }
+
+    /**
+     * @return the view displayed
+     */
+    public BabushkaText getView() {
+        return view;
+    }
+
+    /**
+     * @return how the Pieces were displayed: {@link #REBUILD}, {@link #UPDATE},
+     * {@link #REBUILD_LARGE}, {@link #UPDATE_LARGE}, {@link #PACKED}, {@link #BIND} or
+     * {@link #REBIND}
+     */
+    public int getKind() {
+        return kind;
+    }
+
+    /**
+     * @return how long displaying took, in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return the number of Pieces shown
+     */
+    public int getPieceCount() {
+        return pieceCount;
+    }
+
+    /**
+     * @return the number of spans styling the text afterwards
+     */
+    public int getSpanCount() {
+        return spanCount;
+    }
+
+    /**
+     * @return the number of characters written into the text, all of them when it was rebuilt
+     */
+    public int getCharactersWritten() {
+        return charactersWritten;
+    }
+
+    /**
+     * @return the number of spans added to the text or moved in it
+     */
+    public int getSpansWritten() {
+        return spansWritten;
+    }
+
+    /**
+     * @return true if the view requested to be laid out again
+     */
+    public boolean isRelayout() {
+        return relayout;
+    }
+
+    /**
+     * @return true if the text was edited without laying the view out again, because the edited
+     * Pieces kept their length and width
+     */
+    public boolean isRelayoutAvoided() {
+        return relayoutAvoided;
+    }
+}
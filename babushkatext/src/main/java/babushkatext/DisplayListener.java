@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+/**
+ * Told about every {@link BabushkaText#display()}, and every call showing other Pieces such as a
+ * bind, for example to report slow ones. Set one on a view with
+ * {@link BabushkaText#setDisplayListener(DisplayListener)}, or on every view with
+ * {@link DisplayStats#setListener(DisplayListener)}.
+ *
+ * No event is allocated per display: a view reuses a single one, handed to both of these
+ * listeners.
+ */
+public interface DisplayListener {
+
+    /**
+     * Called on the UI thread when the display returns.
+     *
+     * @param event what the display did. It is reused by the view, so copy what is needed
+     *              instead of keeping it.
+     */
+    void onDisplay(DisplayEvent event);
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Counters and a latency histogram of the work done by {@link BabushkaText#display()}, and by
+ * setPieces() and the binds which show Pieces without it, for a single view or for every view of
+ * the process:
+ *
+ * <pre>
+ * DisplayStats.setEnabled(true);
+ * ...
+ * DisplayStats stats = DisplayStats.getGlobal();
+ * stats.getLatency().getPercentileNanos(99);
+ * stats.getRelayoutCount();
+ * </pre>
+ *
+ * Nothing is recorded until either this is enabled or a {@link DisplayListener} is set, and until
+ * then display() only pays for checking so. A view records its own stats, see
+ * {@link BabushkaText#getDisplayStats()}, whenever anything is recorded; the global ones are only
+ * recorded while this is enabled.
+ *
+ * Systrace sections around display(), setPieces(), the binds and their composing, span and
+ * setText steps can be turned on separately with {@link #setTracingEnabled(boolean)}, from Jelly
+ * Bean MR2 on.
+ */
+public final class DisplayStats {
+
+    private static final DisplayStats GLOBAL = new DisplayStats();
+
+    private static volatile boolean sEnabled;
+    private static volatile boolean sTracing;
+    private static volatile DisplayListener sListener;
+
+    private long mDisplayCount;
+    private long mRebuildCount;
+    private long mRelayoutCount;
+    private long mAvoidedRelayoutCount;
+    private long mCharactersWritten;
+    private long mSpansWritten;
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+
+    DisplayStats() {
+    }
+
+    /**
+     * @return the stats of every view in this process
+     */
+    public static DisplayStats getGlobal() {
+        return GLOBAL;
+    }
+
+    /**
+     * Turns recording the stats of every view on or off.
+     *
+     * @param enabled true to record
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * @return true if the stats of every view are recorded
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Sets a listener told about every display() of every view, on top of the listener of the
+     * view itself.
+     *
+     * @param listener the listener, or null for none
+     */
+    public static void setListener(DisplayListener listener) {
+        sListener = listener;
+    }
+
+    static DisplayListener getListener() {
+        return sListener;
+    }
+
+    /**
+     * @return true if display() has anything to record, with or without a listener of its own
+     */
+    static boolean isRecording() {
+        return sEnabled || sListener != null;
+    }
+
+    /**
+     * Turns systrace sections around display() on or off. They are only available from Jelly Bean
+     * MR2 on, and this does nothing on older versions.
+     *
+     * @param enabled true to trace
+     */
+    public static void setTracingEnabled(boolean enabled) {
+        sTracing = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * @return true if display() is traced
+     */
+    public static boolean isTracingEnabled() {
+        return sTracing;
+    }
+
+    static void beginSection(String name) {
+        if(sTracing) {
+            Trace.beginSection(name);
+        }
+    }
+
+    static void endSection() {
+        if(sTracing) {
+            Trace.endSection();
+        }
+    }
+
+    synchronized void record(DisplayEvent event) {
+        mDisplayCount++;
+        if(event.kind != DisplayEvent.UPDATE && event.kind != DisplayEvent.UPDATE_LARGE
+                && event.kind != DisplayEvent.REBIND) {
+            mRebuildCount++;
+        }
+        if(event.relayout) {
+            mRelayoutCount++;
+        }
+        if(event.relayoutAvoided) {
+            mAvoidedRelayoutCount++;
+        }
+        mCharactersWritten += event.charactersWritten;
+        mSpansWritten += event.spansWritten;
+        mLatency.record(event.durationNanos);
+    }
+
+    /**
+     * @return the number of calls to display(), and to methods showing other Pieces such as
+     * binds, recorded
+     */
+    public synchronized long getDisplayCount() {
+        return mDisplayCount;
+    }
+
+    /**
+     * @return the number of displays which composed the text from scratch rather than editing it
+     */
+    public synchronized long getRebuildCount() {
+        return mRebuildCount;
+    }
+
+    /**
+     * @return the number of displays after which the view had to be laid out again
+     */
+    public synchronized long getRelayoutCount() {
+        return mRelayoutCount;
+    }
+
+    /**
+     * @return the number of displays which edited the text without laying the view out again
+     */
+    public synchronized long getAvoidedRelayoutCount() {
+        return mAvoidedRelayoutCount;
+    }
+
+    /**
+     * @return the number of characters written into the displayed texts
+     */
+    public synchronized long getCharactersWritten() {
+        return mCharactersWritten;
+    }
+
+    /**
+     * @return the number of spans added to the displayed texts or moved in them
+     */
+    public synchronized long getSpansWritten() {
+        return mSpansWritten;
+    }
+
+    /**
+     * @return a copy of the histogram of how long display() took
+     */
+    public synchronized LatencyHistogram getLatency() {
+        return new LatencyHistogram(mLatency);
+    }
+
+    /**
+     * Sets every counter back to 0 and empties the histogram.
+     */
+    public synchronized void reset() {
+        mDisplayCount = 0;
+        mRebuildCount = 0;
+        mRelayoutCount = 0;
+        mAvoidedRelayoutCount = 0;
+        mCharactersWritten = 0;
+        mSpansWritten = 0;
+        mLatency.clear();
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import android.text.Spannable;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The search highlights of a {@link BabushkaText}: a background color span on each occurrence
+ * of a query, drawn over the text without being part of any Piece.
+ *
+ * A new query is found through a {@link SuffixArray} of the displayed text, built the first time
+ * the text is searched, so typing a query costs about as much as it has matches rather than as
+ * long as the text is. The matches of the current query then follow the text: an edit in place
+ * only drops the matches it broke, moves those after it and looks for new ones around it, without
+ * indexing the text again. Only a text replaced as a whole is searched again from start to end.
+ *
+ * The index outlives edits in place too: they are recorded as ranges of the indexed text, whose
+ * matches are dropped, and of the current text, which is scanned. It's only built again once the
+ * edited ranges hold too large a part of the text, by the next new query.
+ *
+ * Matches ignore case, char by char, and may span several Pieces.
+ */
+final class HighlightOverlay {
+
+    // without a priority, highlights come after the spans of Pieces and cover their backgrounds
+    private static final int FLAGS = Spannable.SPAN_EXCLUSIVE_EXCLUSIVE;
+
+    private int mColor;
+    private String mQuery = "";
+
+    // an index is built again once its edited ranges hold more chars than the larger of these,
+    // or once there are more ranges than this
+    private static final int MIN_STALE_CHARS = 4096;
+    private static final int STALE_TEXT_FRACTION = 8;
+    private static final int MAX_EDITS = 512;
+
+    // the index of mText, null until a new query needs it or once the text was replaced
+    private SuffixArray mIndex;
+
+    // the ranges edited in place since mIndex was built, in order: where each one starts and ends
+    // in the indexed text, and in the current text
+    private int[] mIndexedStarts = new int[8];
+    private int[] mIndexedEnds = new int[8];
+    private int[] mEditStarts = new int[8];
+    private int[] mEditEnds = new int[8];
+    private int mEditCount;
+    // the chars of the edited ranges, plus one for each range
+    private int mEditedChars;
+
+    // the text holding the highlights, and the start and span of each match, in text order
+    private Spannable mText;
+    private int[] mMatches = new int[16];
+    private MutableColorSpan[] mMatchSpans = new MutableColorSpan[16];
+    private int mMatchCount;
+
+    // true once the text was replaced, until the matches are found in the new one
+    private boolean mStale;
+
+    // spans of former matches, reused for the next ones
+    private final List<MutableColorSpan> mFreeSpans = new ArrayList<>();
+    private int[] mFound = new int[16];
+
+    HighlightOverlay(int color) {
+        mColor = color;
+    }
+
+    boolean hasQuery() {
+        return mQuery.length() > 0;
+    }
+
+    /**
+     * @return true if the text was replaced since the matches were found
+     */
+    boolean isStale() {
+        return mStale;
+    }
+
+    /**
+     * Highlights every occurrence of a query in a text, removing the highlights of the previous
+     * one.
+     *
+     * @param query the query, empty to remove the highlights
+     * @return the number of matches
+     */
+    int highlight(Spannable text, CharSequence query) {
+        String folded = fold(query);
+        if(folded.equals(mQuery) && text == mText && !mStale) {
+            // the matches followed every edit of the text
+            return mMatchCount;
+        }
+
+        removeSpans();
+        mQuery = folded;
+        mStale = false;
+        if(mQuery.length() == 0) {
+            mText = null;
+            dropIndex();
+            return 0;
+        }
+
+        if(text != mText) {
+            dropIndex();
+        }
+        mText = text;
+        if(mIndex == null) {
+            char[] chars = new char[text.length()];
+            TextUtils.getChars(text, 0, chars.length, chars, 0);
+            for(int i = 0; i < chars.length; i++) {
+                chars[i] = Character.toLowerCase(chars[i]);
+            }
+            mIndex = new SuffixArray(chars);
+        }
+
+        int count = mIndex.find(mQuery, mFound);
+        if(count > mFound.length) {
+            mFound = new int[Math.max(count, mFound.length * 2)];
+            mIndex.find(mQuery, mFound);
+        }
+        Arrays.sort(mFound, 0, count);
+        if(mEditCount > 0) {
+            count = followEdits(text, count);
+        }
+        addMatches(count);
+        return mMatchCount;
+    }
+
+    /**
+     * Moves the matches along with an edit of the text, made in place: chars from start on were
+     * replaced by others. The matches the edit broke are removed, those after it follow it, and
+     * the edited chars are searched for new ones.
+     *
+     * @param text the edited text, which is replaced as a whole if it isn't the highlighted one
+     * @param before the number of chars replaced
+     * @param after the number of chars replacing them
+     */
+    void edited(Spannable text, int start, int before, int after) {
+        if(mQuery.length() == 0 || mStale) {
+            return;
+        }
+        if(text != mText) {
+            replaced();
+            return;
+        }
+        if(mIndex != null) {
+            recordEdit(start, before, after);
+        }
+
+        // kept: the matches ending before the edit, broken: those overlapping it
+        int length = mQuery.length();
+        int kept = 0;
+        while(kept < mMatchCount && mMatches[kept] + length <= start) {
+            kept++;
+        }
+        int broken = kept;
+        while(broken < mMatchCount && mMatches[broken] < start + before) {
+            mText.removeSpan(mMatchSpans[broken]);
+            mFreeSpans.add(mMatchSpans[broken]);
+            broken++;
+        }
+
+        // new matches overlap the new chars, or join the chars around a deletion
+        int found = find(text, Math.max(0, start - length + 1),
+                Math.min(start + after - 1, text.length() - length), 0);
+
+        // the spans of the matches after the edit were moved by the text itself
+        int delta = after - before;
+        int moved = mMatchCount - broken;
+        ensureMatchCapacity(kept + found + moved);
+        System.arraycopy(mMatches, broken, mMatches, kept + found, moved);
+        System.arraycopy(mMatchSpans, broken, mMatchSpans, kept + found, moved);
+        for(int i = kept + found; i < kept + found + moved; i++) {
+            mMatches[i] += delta;
+        }
+        mMatchCount = kept;
+        addMatches(found);
+        mMatchCount = kept + found + moved;
+    }
+
+    /**
+     * Marks the matches stale once the text was replaced as a whole: they are found again by the
+     * next {@link #refresh(Spannable)}.
+     */
+    void replaced() {
+        dropIndex();
+        if(mQuery.length() > 0) {
+            mStale = true;
+        }
+    }
+
+    /**
+     * Finds the matches of the current query in a text replaced as a whole, scanning it rather
+     * than indexing it, since the index would likely only serve this query.
+     */
+    void refresh(Spannable text) {
+        if(!mStale && text == mText) {
+            return;
+        }
+        removeSpans();
+        mStale = false;
+        mText = text;
+        dropIndex();
+        int found = find(text, 0, text.length() - mQuery.length(), 0);
+        addMatches(found);
+    }
+
+    /**
+     * Changes the color of the highlights in place.
+     */
+    void setColor(int color) {
+        mColor = color;
+        for(int i = 0; i < mMatchCount; i++) {
+            mMatchSpans[i].setColor(color);
+        }
+        for(int i = 0; i < mFreeSpans.size(); i++) {
+            mFreeSpans.get(i).setColor(color);
+        }
+    }
+
+    int getMatchCount() {
+        return mMatchCount;
+    }
+
+    int getMatchStart(int index) {
+        if(index < 0 || index >= mMatchCount) {
+            throw new IndexOutOfBoundsException("No match " + index + ", " + mMatchCount
+                    + " found");
+        }
+        return mMatches[index];
+    }
+
+    int getQueryLength() {
+        return mQuery.length();
+    }
+
+    /**
+     * Records an edit made in place since the index was built, merged with the recorded ranges it
+     * touches. The index is dropped once they hold too large a part of the text.
+     */
+    private void recordEdit(int start, int before, int after) {
+        int end = start + before;
+
+        // the ranges before the edit, then those it touches, which are merged into one
+        int first = 0;
+        int shift = 0;
+        while(first < mEditCount && mEditEnds[first] < start) {
+            shift += delta(first);
+            first++;
+        }
+        int last = first - 1;
+        int lastShift = shift;
+        while(last + 1 < mEditCount && mEditStarts[last + 1] <= end) {
+            last++;
+            lastShift += delta(last);
+            mEditedChars -= mEditEnds[last] - mEditStarts[last] + 1;
+        }
+
+        // outside the ranges, the current text is the indexed one, moved by the ranges before
+        int editStart = start;
+        int indexedStart = start - shift;
+        int editEnd = end;
+        int indexedEnd = end - lastShift;
+        if(last >= first && mEditStarts[first] <= start) {
+            editStart = mEditStarts[first];
+            indexedStart = mIndexedStarts[first];
+        }
+        if(last >= first && mEditEnds[last] >= end) {
+            editEnd = mEditEnds[last];
+            indexedEnd = mIndexedEnds[last];
+        }
+
+        int merged = last - first + 1;
+        if(merged == 0) {
+            ensureEditCapacity(mEditCount + 1);
+            moveEdits(first, first + 1, mEditCount - first);
+        } else {
+            moveEdits(last + 1, first + 1, mEditCount - last - 1);
+        }
+        mEditCount += 1 - merged;
+
+        int delta = after - before;
+        mIndexedStarts[first] = indexedStart;
+        mIndexedEnds[first] = indexedEnd;
+        mEditStarts[first] = editStart;
+        mEditEnds[first] = editEnd + delta;
+        mEditedChars += editEnd + delta - editStart + 1;
+        for(int i = first + 1; i < mEditCount; i++) {
+            mEditStarts[i] += delta;
+            mEditEnds[i] += delta;
+        }
+
+        if(mEditCount > MAX_EDITS
+                || mEditedChars > Math.max(MIN_STALE_CHARS, mText.length() / STALE_TEXT_FRACTION)) {
+            dropIndex();
+        }
+    }
+
+    /**
+     * @return how many chars an edited range added to the text
+     */
+    private int delta(int edit) {
+        return mEditEnds[edit] - mEditStarts[edit] - (mIndexedEnds[edit] - mIndexedStarts[edit]);
+    }
+
+    private void moveEdits(int from, int to, int count) {
+        System.arraycopy(mIndexedStarts, from, mIndexedStarts, to, count);
+        System.arraycopy(mIndexedEnds, from, mIndexedEnds, to, count);
+        System.arraycopy(mEditStarts, from, mEditStarts, to, count);
+        System.arraycopy(mEditEnds, from, mEditEnds, to, count);
+    }
+
+    private void ensureEditCapacity(int capacity) {
+        if(capacity > mEditStarts.length) {
+            int size = Math.max(capacity, mEditStarts.length * 2);
+            mIndexedStarts = Arrays.copyOf(mIndexedStarts, size);
+            mIndexedEnds = Arrays.copyOf(mIndexedEnds, size);
+            mEditStarts = Arrays.copyOf(mEditStarts, size);
+            mEditEnds = Arrays.copyOf(mEditEnds, size);
+        }
+    }
+
+    private void dropIndex() {
+        mIndex = null;
+        mEditCount = 0;
+        mEditedChars = 0;
+    }
+
+    /**
+     * Turns the first count matches of mFound, found in the indexed text and in order, into those
+     * of the current text: matches overlapping an edited range are dropped, the others moved by
+     * the ranges before them, and the edited ranges are scanned for the matches they now hold.
+     *
+     * @return the number of matches, in order
+     */
+    private int followEdits(CharSequence text, int count) {
+        int length = mQuery.length();
+        int kept = 0;
+        int edit = 0;
+        int shift = 0;
+        for(int i = 0; i < count; i++) {
+            int start = mFound[i];
+            while(edit < mEditCount && mIndexedEnds[edit] <= start) {
+                shift += delta(edit);
+                edit++;
+            }
+            if(edit == mEditCount || start + length <= mIndexedStarts[edit]) {
+                mFound[kept++] = start + shift;
+            }
+        }
+
+        // a match of an edited range overlaps its chars, or joins those around a deletion
+        int found = kept;
+        int scanned = -1;
+        for(int i = 0; i < mEditCount; i++) {
+            int first = Math.max(Math.max(0, mEditStarts[i] - length + 1), scanned + 1);
+            int last = Math.min(mEditEnds[i] - 1, text.length() - length);
+            found = find(text, first, last, found);
+            scanned = Math.max(scanned, last);
+        }
+        Arrays.sort(mFound, 0, found);
+        return found;
+    }
+
+    /**
+     * Finds the matches of the query starting from first to last, both included, into mFound
+     * after its first count ones.
+     *
+     * @return the number of matches in mFound
+     */
+    private int find(CharSequence text, int first, int last, int count) {
+        int length = mQuery.length();
+        for(int start = first; start <= last; start++) {
+            int i = 0;
+            while(i < length && Character.toLowerCase(text.charAt(start + i)) == mQuery.charAt(i)) {
+                i++;
+            }
+            if(i == length) {
+                if(count == mFound.length) {
+                    mFound = Arrays.copyOf(mFound, count * 2);
+                }
+                mFound[count++] = start;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Highlights the first count matches of mFound, after those of mMatches.
+     */
+    private void addMatches(int count) {
+        ensureMatchCapacity(mMatchCount + count);
+        int length = mQuery.length();
+        for(int i = 0; i < count; i++) {
+            MutableColorSpan span = mFreeSpans.isEmpty()
+                    ? new MutableColorSpan(true, mColor) : mFreeSpans.remove(mFreeSpans.size() - 1);
+            mText.setSpan(span, mFound[i], mFound[i] + length, FLAGS);
+            mMatches[mMatchCount] = mFound[i];
+            mMatchSpans[mMatchCount] = span;
+            mMatchCount++;
+        }
+    }
+
+    private void ensureMatchCapacity(int capacity) {
+        if(capacity > mMatches.length) {
+            int size = Math.max(capacity, mMatches.length * 2);
+            mMatches = Arrays.copyOf(mMatches, size);
+            mMatchSpans = Arrays.copyOf(mMatchSpans, size);
+        }
+    }
+
+    private void removeSpans() {
+        for(int i = 0; i < mMatchCount; i++) {
+            if(mText != null) {
+                mText.removeSpan(mMatchSpans[i]);
+            }
+            mFreeSpans.add(mMatchSpans[i]);
+            mMatchSpans[i] = null;
+        }
+        mMatchCount = 0;
+    }
+
+    private static String fold(CharSequence query) {
+        if(query == null) {
+            return "";
+        }
+        char[] chars = new char[query.length()];
+        for(int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(query.charAt(i));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+/**
+ * Counts durations in buckets of powers of two microseconds: under 1, under 2, under 4 and
+ * so on up to about 8 seconds, the last bucket holding anything longer. Percentiles are estimated
+ * from the bucket they fall in, so they are at most twice the exact value.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 24;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    LatencyHistogram() {
+    }
+
+    LatencyHistogram(LatencyHistogram other) {
+        System.arraycopy(other.mCounts, 0, mCounts, 0, BUCKET_COUNT);
+        mCount = other.mCount;
+        mTotalNanos = other.mTotalNanos;
+        mMaxNanos = other.mMaxNanos;
+    }
+
+    void record(long nanos) {
+        long micros = nanos / 1000;
+        // micros between 2^(b - 1) and 2^b go to bucket b
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        mCounts[Math.min(bucket, BUCKET_COUNT - 1)]++;
+        mCount++;
+        mTotalNanos += nanos;
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+    }
+
+    void clear() {
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the sum of the durations recorded, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    /**
+     * @return the average duration, in nanoseconds, or 0 if none was recorded
+     */
+    public long getMeanNanos() {
+        return mCount > 0 ? mTotalNanos / mCount : 0;
+    }
+
+    /**
+     * @return the longest duration recorded, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    /**
+     * Estimates a percentile, such as 50 for the median or 99 for the slowest 1%, as the upper
+     * bound of the bucket it falls in.
+     *
+     * @param percentile between 0 and 100
+     * @return the estimated duration, in nanoseconds, or 0 if none was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if(percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long rank = Math.max(1, (long) Math.ceil(mCount * percentile / 100));
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += mCounts[bucket];
+            if(seen >= rank) {
+                return Math.min(getBucketUpperBoundNanos(bucket), mMaxNanos);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of buckets
+     */
+    public int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * @param bucket index of the bucket
+     * @return the number of durations in the bucket
+     */
+    public long getCountInBucket(int bucket) {
+        return mCounts[bucket];
+    }
+
+    /**
+     * @param bucket index of the bucket
+     * @return the duration the bucket holds durations shorter than, in nanoseconds, or
+     * Long.MAX_VALUE for the last one
+     */
+    public long getBucketUpperBoundNanos(int bucket) {
+        if(bucket == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        return (1L << bucket) * 1000;
+    }
+}
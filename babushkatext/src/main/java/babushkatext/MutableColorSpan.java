@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import android.text.TextPaint;
+import android.text.style.CharacterStyle;
+import android.text.style.UpdateAppearance;
+
+/**
+ * A text or background color span whose color can be changed in place, once it styles the text.
+ * A new color only needs the view to be drawn again: the text isn't edited, so it's neither laid
+ * out nor measured again.
+ *
+ * Unlike the spans of the {@link SpanCache}, these belong to a single view, which restyles them
+ * with {@link BabushkaText#restyle(Palette)}.
+ */
+final class MutableColorSpan extends CharacterStyle implements UpdateAppearance {
+
+    private final boolean mBackground;
+    private int mColor;
+
+    MutableColorSpan(boolean background, int color) {
+        mBackground = background;
+        mColor = color;
+    }
+
+    boolean isBackground() {
+        return mBackground;
+    }
+
+    int getColor() {
+        return mColor;
+    }
+
+    void setColor(int color) {
+        mColor = color;
+    }
+
+    @Override
+    public void updateDrawState(TextPaint tp) {
+        if(mBackground) {
+            tp.bgColor = mColor;
+        } else {
+            tp.setColor(mColor);
+        }
+    }
+}
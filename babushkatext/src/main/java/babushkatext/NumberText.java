@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import android.text.GetChars;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * The text of a Piece showing a number, such as a price, a score or a count. The number is
+ * formatted straight into a char array which is reused for every value, so updating it doesn't
+ * allocate anything.
+ *
+ * Use it as the text of a Piece, then change its value as often as needed. The Piece is marked as
+ * modified on each change, just like with {@link Piece#setText(CharSequence)}:
+ *
+ * <pre>
+ * NumberText price = new NumberText().prefix("$").grouping(',').fractionDigits(2);
+ * babushka.addPiece(new BabushkaText.Piece.Builder(price).build());
+ *
+ * price.setValue(17950); // shows $179.50
+ * babushka.display();
+ * </pre>
+ *
+ * A NumberText belongs to a single Piece, the last one it was given to.
+ */
+public final class NumberText implements GetChars {
+
+    // longest number of digits of a long
+    private static final int MAX_DIGITS = 19;
+
+    private String mPrefix = "";
+    private char mGroupingSeparator;
+    private char mDecimalSeparator = '.';
+    private int mFractionDigits;
+    private long mValue;
+
+    // the formatted text lives at the end of mChars, from mStart on
+    private char[] mChars;
+    private int mStart;
+
+    private Piece mPiece;
+
+    public NumberText() {
+        allocate();
+    }
+
+    /**
+     * Sets the text shown before the number, such as a currency symbol.
+     *
+     * @param prefix the prefix, empty for none
+     * @return this NumberText
+     */
+    public NumberText prefix(String prefix) {
+        mPrefix = prefix;
+        allocate();
+        return this;
+    }
+
+    /**
+     * Groups the integer digits by thousands.
+     *
+     * @param separator the separator between groups, such as ',', or 0 for no grouping
+     * @return this NumberText
+     */
+    public NumberText grouping(char separator) {
+        mGroupingSeparator = separator;
+        allocate();
+        return this;
+    }
+
+    /**
+     * Shows the value as a fixed point number: with 2 fraction digits, a value of 17950 is shown
+     * as 179.50.
+     *
+     * @param digits the number of digits after the decimal separator, between 0 and 18
+     * @return this NumberText
+     */
+    public NumberText fractionDigits(int digits) {
+        if(digits < 0 || digits >= MAX_DIGITS) {
+            throw new IllegalArgumentException("digits must be between 0 and 18");
+        }
+        mFractionDigits = digits;
+        allocate();
+        return this;
+    }
+
+    /**
+     * @param separator the separator between the integer and the fraction digits
+     * @return this NumberText
+     */
+    public NumberText decimalSeparator(char separator) {
+        mDecimalSeparator = separator;
+        format();
+        return this;
+    }
+
+    /**
+     * Sets the number to show, without allocating anything. With fraction digits, this is the
+     * unscaled value: 17950 with 2 fraction digits is 179.50.
+     *
+     * @param value the value
+     */
+    public void setValue(long value) {
+        if(value == mValue) {
+            return;
+        }
+        mValue = value;
+        format();
+    }
+
+    /**
+     * @return the value shown, unscaled
+     */
+    public long getValue() {
+        return mValue;
+    }
+
+    /**
+     * Called when this becomes the text of a Piece.
+     */
+    void attachTo(Piece piece) {
+        mPiece = piece;
+    }
+
+    /**
+     * Copies characters of the text into an array, without going through a String. Declared by
+     * {@link GetChars}, so that text buffers appending this copy it in one go.
+     */
+    @Override
+    public void getChars(int start, int end, char[] dest, int destOffset) {
+        System.arraycopy(mChars, mStart + start, dest, destOffset, end - start);
+    }
+
+    @Override
+    public int length() {
+        return mChars.length - mStart;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return mChars[mStart + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(mChars, mStart + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(mChars, mStart, length());
+    }
+
+    /**
+     * Sizes the buffer for the longest text the current format can produce.
+     */
+    private void allocate() {
+        int integerDigits = MAX_DIGITS - mFractionDigits;
+        int groupingSeparators = mGroupingSeparator != 0 ? (integerDigits - 1) / 3 : 0;
+        int decimalSeparator = mFractionDigits > 0 ? 1 : 0;
+
+        // sign, prefix, digits (plus a leading zero) and separators
+        mChars = new char[1 + mPrefix.length() + MAX_DIGITS + 1 + groupingSeparators
+                + decimalSeparator];
+        format();
+    }
+
+    /**
+     * Writes the value into the end of the buffer, from the last digit back, and marks the Piece
+     * showing it as modified.
+     */
+    private void format() {
+        char[] chars = mChars;
+        int cursor = chars.length;
+
+        // work with a negative value, which can hold Long.MIN_VALUE
+        boolean negative = mValue < 0;
+        long value = negative ? mValue : -mValue;
+
+        for(int i = 0; i < mFractionDigits; i++) {
+            chars[--cursor] = (char) ('0' - value % 10);
+            value /= 10;
+        }
+        if(mFractionDigits > 0) {
+            chars[--cursor] = mDecimalSeparator;
+        }
+
+        int digits = 0;
+        do {
+            if(mGroupingSeparator != 0 && digits > 0 && digits % 3 == 0) {
+                chars[--cursor] = mGroupingSeparator;
+            }
+            chars[--cursor] = (char) ('0' - value % 10);
+            value /= 10;
+            digits++;
+        } while(value != 0);
+
+        for(int i = mPrefix.length() - 1; i >= 0; i--) {
+            chars[--cursor] = mPrefix.charAt(i);
+        }
+        if(negative) {
+            chars[--cursor] = '-';
+        }
+
+        mStart = cursor;
+
+        if(mPiece != null) {
+            mPiece.onTextModified();
+        }
+    }
+}
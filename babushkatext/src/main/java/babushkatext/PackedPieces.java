@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.util.List;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * A compact list of Pieces for long texts, displayed with
+ * {@link BabushkaText#setPackedPieces(PackedPieces)}. Instead of one object per Piece, plus its
+ * text, the attributes of all the Pieces are stored in primitive arrays, one per attribute, and
+ * their text in a single shared char array. A Piece then takes about 25 bytes plus its
+ * characters, instead of about 100 for a {@link Piece} object and its String.
+ *
+ * Pieces are added with the text they show and a Piece used as a style, whose attributes are
+ * copied but not its text. A few style Pieces can be reused for any number of packed ones:
+ *
+ * <pre>
+ * Piece timestamp = new Piece.Builder("").textColor(Color.GRAY).build();
+ * packed.add("12:04 ", timestamp);
+ * </pre>
+ *
+ * Texts are copied too, so mutable ones such as a {@link NumberText} don't update the list. Keys
+ * aren't stored.
+ */
+public final class PackedPieces {
+
+    // bits of mFlags, also those of PieceCodec and PieceTemplate; the style takes the two lowest
+    // ones, Typeface styles being 0 to 3
+    static final int STYLE_MASK = 0x3;
+    static final int UNDERLINE = 1 << 2;
+    static final int STRIKE = 1 << 3;
+    static final int SUPERSCRIPT = 1 << 4;
+    static final int SUBSCRIPT = 1 << 5;
+    // set if the text size was set on the Builder of the Piece, rather than left to the default
+    static final int TEXT_SIZE = 1 << 6;
+
+    private int mSize;
+
+    // where the text of each Piece lives in mChars
+    private int[] mStarts;
+    private int[] mLengths;
+
+    private int[] mTextColors;
+    private int[] mTextSizes;
+    private int[] mBackgroundColors;
+    private int[] mRelativeSizes;
+    private byte[] mFlags;
+
+    // replaced texts are left in place until they make up half of the buffer
+    private char[] mChars;
+    private int mCharCount;
+    private int mGarbageCount;
+
+    private BabushkaText mOwner;
+
+    // read by SpanPlanner, see getAttributes()
+    private final PieceAttributes mAttributes = new Attributes();
+
+    public PackedPieces() {
+        this(16);
+    }
+
+    /**
+     * @param capacity the number of Pieces to make room for
+     */
+    public PackedPieces(int capacity) {
+        capacity = Math.max(1, capacity);
+        mStarts = new int[capacity];
+        mLengths = new int[capacity];
+        mTextColors = new int[capacity];
+        mTextSizes = new int[capacity];
+        mBackgroundColors = new int[capacity];
+        mRelativeSizes = new int[capacity];
+        mFlags = new byte[capacity];
+        mChars = new char[capacity * 8];
+    }
+
+    /**
+     * @param pieces the Pieces to pack, in display order
+     * @return a packed copy of the Pieces
+     */
+    public static PackedPieces of(List<Piece> pieces) {
+        PackedPieces packed = new PackedPieces(pieces.size());
+        for(int i = 0; i < pieces.size(); i++) {
+            packed.add(pieces.get(i));
+        }
+        return packed;
+    }
+
+    /**
+     * Appends a copy of a Piece.
+     *
+     * @param aPiece the Piece
+     */
+    public void add(Piece aPiece) {
+        add(mSize, aPiece.getText(), aPiece);
+    }
+
+    /**
+     * Appends a Piece.
+     *
+     * @param text the text of the new Piece, copied
+     * @param style a Piece whose attributes, but not its text, the new Piece gets
+     */
+    public void add(CharSequence text, Piece style) {
+        add(mSize, text, style);
+    }
+
+    /**
+     * Inserts a Piece.
+     *
+     * @param location the position of the new Piece
+     * @param text the text of the new Piece, copied
+     * @param style a Piece whose attributes, but not its text, the new Piece gets
+     */
+    public void add(int location, CharSequence text, Piece style) {
+        if(location < 0 || location > mSize) {
+            throw new IndexOutOfBoundsException("location " + location + ", size " + mSize);
+        }
+        if(mSize == mStarts.length) {
+            grow();
+        }
+        int moved = mSize - location;
+        System.arraycopy(mStarts, location, mStarts, location + 1, moved);
+        System.arraycopy(mLengths, location, mLengths, location + 1, moved);
+        System.arraycopy(mTextColors, location, mTextColors, location + 1, moved);
+        System.arraycopy(mTextSizes, location, mTextSizes, location + 1, moved);
+        System.arraycopy(mBackgroundColors, location, mBackgroundColors, location + 1, moved);
+        System.arraycopy(mRelativeSizes, location, mRelativeSizes, location + 1, moved);
+        System.arraycopy(mFlags, location, mFlags, location + 1, moved);
+        mSize++;
+
+        mLengths[location] = 0;
+        writeText(location, text);
+        setStyle(location, style);
+        notifyOwner();
+    }
+
+    /**
+     * Gives a Piece the attributes of another one, keeping its text.
+     *
+     * @param location the position of the Piece
+     * @param style a Piece whose attributes, but not its text, the Piece gets
+     */
+    public void set(int location, Piece style) {
+        checkLocation(location);
+        setStyle(location, style);
+        notifyOwner();
+    }
+
+    /**
+     * @param location the position of the Piece
+     * @param text the new text of the Piece, copied
+     */
+    public void setText(int location, CharSequence text) {
+        checkLocation(location);
+        writeText(location, text);
+        notifyOwner();
+    }
+
+    /**
+     * @param location the position of the Piece
+     * @param textColor the new text color of the Piece
+     */
+    public void setTextColor(int location, int textColor) {
+        checkLocation(location);
+        mTextColors[location] = textColor;
+        notifyOwner();
+    }
+
+    /**
+     * @param location the position of the Piece
+     * @param backgroundColor the new background color of the Piece, -1 for none
+     */
+    public void setBackgroundColor(int location, int backgroundColor) {
+        checkLocation(location);
+        mBackgroundColors[location] = backgroundColor;
+        notifyOwner();
+    }
+
+    /**
+     * @param location the position of the Piece to remove
+     */
+    public void remove(int location) {
+        checkLocation(location);
+        mGarbageCount += mLengths[location];
+        int moved = mSize - location - 1;
+        System.arraycopy(mStarts, location + 1, mStarts, location, moved);
+        System.arraycopy(mLengths, location + 1, mLengths, location, moved);
+        System.arraycopy(mTextColors, location + 1, mTextColors, location, moved);
+        System.arraycopy(mTextSizes, location + 1, mTextSizes, location, moved);
+        System.arraycopy(mBackgroundColors, location + 1, mBackgroundColors, location, moved);
+        System.arraycopy(mRelativeSizes, location + 1, mRelativeSizes, location, moved);
+        System.arraycopy(mFlags, location + 1, mFlags, location, moved);
+        mSize--;
+        notifyOwner();
+    }
+
+    /**
+     * Removes every Piece, keeping the room they took.
+     */
+    public void clear() {
+        mSize = 0;
+        mCharCount = 0;
+        mGarbageCount = 0;
+        notifyOwner();
+    }
+
+    /**
+     * @return the number of Pieces
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of characters of the text of all the Pieces
+     */
+    public int length() {
+        return mCharCount - mGarbageCount;
+    }
+
+    /**
+     * @param location the position of the Piece
+     * @return the text of the Piece, as a new String
+     */
+    public String getText(int location) {
+        checkLocation(location);
+        return new String(mChars, mStarts[location], mLengths[location]);
+    }
+
+    /**
+     * @param location the position of the Piece
+     * @return the number of characters of the text of the Piece
+     */
+    public int getTextLength(int location) {
+        checkLocation(location);
+        return mLengths[location];
+    }
+
+    /**
+     * Copies the text of a Piece into an array, without allocating anything.
+     */
+    public void getChars(int location, char[] dest, int destOffset) {
+        checkLocation(location);
+        System.arraycopy(mChars, mStarts[location], dest, destOffset, mLengths[location]);
+    }
+
+    public int getTextColor(int location) {
+        checkLocation(location);
+        return mTextColors[location];
+    }
+
+    public int getBackgroundColor(int location) {
+        checkLocation(location);
+        return mBackgroundColors[location];
+    }
+
+    public int getTextSize(int location) {
+        checkLocation(location);
+        return mTextSizes[location];
+    }
+
+    /**
+     * @param location the position of the Piece
+     * @return a new Piece with the text and attributes of the packed one
+     */
+    public Piece newPiece(int location) {
+        checkLocation(location);
+        int flags = mFlags[location];
+        Piece.Builder builder = applyFlags(new Piece.Builder(getText(location))
+                .textColor(mTextColors[location])
+                .backgroundColor(mBackgroundColors[location])
+                .textSizeRelative(Float.intBitsToFloat(mRelativeSizes[location])), flags);
+        if((flags & TEXT_SIZE) != 0) {
+            builder.textSize(mTextSizes[location]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the attributes of the Pieces, for {@link SpanPlanner}
+     */
+    PieceAttributes getAttributes() {
+        return mAttributes;
+    }
+
+    /**
+     * @see SpanPlanner#valueOf(Piece, int)
+     */
+    int valueOf(int location, int kind) {
+        switch(kind) {
+            case Composition.ABSOLUTE_SIZE:
+                return (mFlags[location] & TEXT_SIZE) != 0
+                        ? mTextSizes[location] : SpanPlanner.NO_TEXT_SIZE;
+            case Composition.RELATIVE_SIZE:
+                return mRelativeSizes[location];
+            case Composition.TEXT_COLOR:
+                return mTextColors[location];
+            case Composition.BACKGROUND_COLOR:
+                return mBackgroundColors[location];
+            default:
+                return valueOfFlags(mFlags[location], kind);
+        }
+    }
+
+    /**
+     * @return the flags holding the style and the boolean attributes of a Piece
+     */
+    static int flagsOf(Piece aPiece) {
+        int flags = aPiece.getStyle() & STYLE_MASK;
+        if(aPiece.isUnderline()) {
+            flags |= UNDERLINE;
+        }
+        if(aPiece.isStrike()) {
+            flags |= STRIKE;
+        }
+        if(aPiece.isSuperscript()) {
+            flags |= SUPERSCRIPT;
+        }
+        if(aPiece.isSubscript()) {
+            flags |= SUBSCRIPT;
+        }
+        if(aPiece.hasTextSize()) {
+            flags |= TEXT_SIZE;
+        }
+        return flags;
+    }
+
+    /**
+     * Gives a Builder the style and the boolean attributes kept in the flags. The text size, whose
+     * value isn't in them, is left to the caller.
+     *
+     * @return the Builder
+     */
+    static Piece.Builder applyFlags(Piece.Builder builder, int flags) {
+        builder.style(flags & STYLE_MASK);
+        if((flags & UNDERLINE) != 0) {
+            builder.underline();
+        }
+        if((flags & STRIKE) != 0) {
+            builder.strike();
+        }
+        if((flags & SUPERSCRIPT) != 0) {
+            builder.superscript();
+        }
+        if((flags & SUBSCRIPT) != 0) {
+            builder.subscript();
+        }
+        return builder;
+    }
+
+    /**
+     * @return the value of an attribute kept in the flags, as {@link SpanPlanner#valueOf} has it
+     */
+    static int valueOfFlags(int flags, int kind) {
+        switch(kind) {
+            case Composition.SUBSCRIPT:
+                return (flags & SUBSCRIPT) != 0 ? 1 : 0;
+            case Composition.SUPERSCRIPT:
+                return (flags & SUPERSCRIPT) != 0 ? 1 : 0;
+            case Composition.STRIKE:
+                return (flags & STRIKE) != 0 ? 1 : 0;
+            case Composition.UNDERLINE:
+                return (flags & UNDERLINE) != 0 ? 1 : 0;
+            case Composition.STYLE:
+                return flags & STYLE_MASK;
+            default:
+                throw new IllegalArgumentException("Unknown span kind " + kind);
+        }
+    }
+
+    /**
+     * Called when this list starts or stops being displayed by a view.
+     */
+    void attachTo(BabushkaText owner) {
+        mOwner = owner;
+    }
+
+    private void notifyOwner() {
+        if(mOwner != null) {
+            mOwner.onPackedPiecesChanged();
+        }
+    }
+
+    private void setStyle(int location, Piece style) {
+        mTextColors[location] = style.getTextColor();
+        mTextSizes[location] = style.getTextSize();
+        mBackgroundColors[location] = style.getBackgroundColor();
+        mRelativeSizes[location] = Float.floatToIntBits(style.getTextSizeRelative());
+        mFlags[location] = (byte) flagsOf(style);
+    }
+
+    /**
+     * Appends the text of a Piece to the buffer, leaving its previous text as garbage.
+     */
+    private void writeText(int location, CharSequence text) {
+        int length = text.length();
+        mGarbageCount += mLengths[location];
+        mLengths[location] = 0;
+        if(mCharCount + length > mChars.length) {
+            if(mGarbageCount > mCharCount / 2) {
+                compact(length);
+            } else {
+                char[] chars = new char[Math.max(mChars.length * 2, mCharCount + length)];
+                System.arraycopy(mChars, 0, chars, 0, mCharCount);
+                mChars = chars;
+            }
+        }
+        Composer.getChars(text, mChars, mCharCount);
+        mStarts[location] = mCharCount;
+        mLengths[location] = length;
+        mCharCount += length;
+    }
+
+    /**
+     * Copies the texts of the Pieces into a new buffer, in order and without garbage, with room
+     * for this many more characters.
+     */
+    private void compact(int extra) {
+        int live = mCharCount - mGarbageCount;
+        char[] chars = new char[Math.max(mChars.length, (live + extra) * 2)];
+        int cursor = 0;
+        for(int i = 0; i < mSize; i++) {
+            System.arraycopy(mChars, mStarts[i], chars, cursor, mLengths[i]);
+            mStarts[i] = cursor;
+            cursor += mLengths[i];
+        }
+        mChars = chars;
+        mCharCount = cursor;
+        mGarbageCount = 0;
+    }
+
+    private void grow() {
+        int capacity = mStarts.length * 2;
+        int[] starts = new int[capacity];
+        int[] lengths = new int[capacity];
+        int[] textColors = new int[capacity];
+        int[] textSizes = new int[capacity];
+        int[] backgroundColors = new int[capacity];
+        int[] relativeSizes = new int[capacity];
+        byte[] flags = new byte[capacity];
+        System.arraycopy(mStarts, 0, starts, 0, mSize);
+        System.arraycopy(mLengths, 0, lengths, 0, mSize);
+        System.arraycopy(mTextColors, 0, textColors, 0, mSize);
+        System.arraycopy(mTextSizes, 0, textSizes, 0, mSize);
+        System.arraycopy(mBackgroundColors, 0, backgroundColors, 0, mSize);
+        System.arraycopy(mRelativeSizes, 0, relativeSizes, 0, mSize);
+        System.arraycopy(mFlags, 0, flags, 0, mSize);
+        mStarts = starts;
+        mLengths = lengths;
+        mTextColors = textColors;
+        mTextSizes = textSizes;
+        mBackgroundColors = backgroundColors;
+        mRelativeSizes = relativeSizes;
+        mFlags = flags;
+    }
+
+    private void checkLocation(int location) {
+        if(location < 0 || location >= mSize) {
+            throw new IndexOutOfBoundsException("location " + location + ", size " + mSize);
+        }
+    }
+
+    /**
+     * The attributes of these Pieces, read without checking the positions.
+     */
+    private final class Attributes implements PieceAttributes {
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        @Override
+        public int getTextLength(int location) {
+            return mLengths[location];
+        }
+
+        @Override
+        public int valueOf(int location, int kind) {
+            return PackedPieces.this.valueOf(location, kind);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.util.Arrays;
+
+/**
+ * A mapping of colors and text sizes, applied to all the Pieces of a view at once with
+ * {@link BabushkaText#restyle(Palette)}, e.g. to switch between a light and a dark theme:
+ *
+ * <pre>
+ * Palette dark = new Palette()
+ *         .color(Color.BLACK, Color.WHITE)
+ *         .color(Color.WHITE, Color.BLACK);
+ * babushka.restyle(dark);
+ * </pre>
+ *
+ * Values without a mapping are kept. Override the map methods for mappings which aren't a fixed
+ * table, such as highlighting every color.
+ */
+public class Palette {
+
+    private final IntMap mColors = new IntMap();
+    private final IntMap mTextSizes = new IntMap();
+
+    /**
+     * Maps a text or background color to another one.
+     *
+     * @param from the color to replace
+     * @param to its replacement
+     * @return this Palette
+     */
+    public Palette color(int from, int to) {
+        mColors.put(from, to);
+        return this;
+    }
+
+    /**
+     * Maps an absolute text size to another one. Unlike colors, new sizes lay the text out again.
+     *
+     * @param from the text size to replace, in pixels
+     * @param to its replacement, in pixels
+     * @return this Palette
+     */
+    public Palette textSize(int from, int to) {
+        mTextSizes.put(from, to);
+        return this;
+    }
+
+    /**
+     * @param color the text color of a Piece
+     * @return its new text color
+     */
+    public int mapTextColor(int color) {
+        return mColors.get(color, color);
+    }
+
+    /**
+     * @param color the background color of a Piece, other than none
+     * @return its new background color
+     */
+    public int mapBackgroundColor(int color) {
+        return mColors.get(color, color);
+    }
+
+    /**
+     * @param textSize the absolute text size of a Piece, in pixels
+     * @return its new text size
+     */
+    public int mapTextSize(int textSize) {
+        return mTextSizes.get(textSize, textSize);
+    }
+
+    /**
+     * A small map of int keys to int values, kept sorted by key.
+     */
+    private static final class IntMap {
+
+        private int[] mKeys = new int[0];
+        private int[] mValues = new int[0];
+
+        void put(int key, int value) {
+            int index = Arrays.binarySearch(mKeys, key);
+            if(index >= 0) {
+                mValues[index] = value;
+                return;
+            }
+            index = -index - 1;
+            int[] keys = new int[mKeys.length + 1];
+            int[] values = new int[mValues.length + 1];
+            System.arraycopy(mKeys, 0, keys, 0, index);
+            System.arraycopy(mValues, 0, values, 0, index);
+            keys[index] = key;
+            values[index] = value;
+            System.arraycopy(mKeys, index, keys, index + 1, mKeys.length - index);
+            System.arraycopy(mValues, index, values, index + 1, mValues.length - index);
+            mKeys = keys;
+            mValues = values;
+        }
+
+        int get(int key, int defaultValue) {
+            int index = Arrays.binarySearch(mKeys, key);
+            return index >= 0 ? mValues[index] : defaultValue;
+        }
+    }
+}
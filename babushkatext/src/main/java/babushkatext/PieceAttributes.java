@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+/**
+ * Read access to the attributes of a list of Pieces, whatever holds them: Piece objects, a
+ * {@link PackedPieces} or encoded Pieces. {@link SpanPlanner} plans them all with the same loop.
+ */
+interface PieceAttributes {
+
+    int size();
+
+    int getTextLength(int location);
+
+    /**
+     * @return the value of an attribute of a Piece, as {@link SpanPlanner#valueOf} has it, or
+     * {@link SpanPlanner#NO_TEXT_SIZE} for an absolute size that was never set
+     */
+    int valueOf(int location, int kind);
+}
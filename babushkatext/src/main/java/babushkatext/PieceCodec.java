@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * Encodes lists of Pieces into a compact binary format, such as for a server to send styled text,
+ * and decodes them back. The format is the same for every device and version of the library:
+ *
+ * - a header of four ints: the magic number 0x424B5431 ("BKT1"), the number of Pieces, the
+ *   length of all their texts and the length of all their keys, in chars.
+ * - a record of 24 bytes per Piece: the length of its text, its text color, absolute text size,
+ *   background color and relative text size as float bits, then a byte of flags (the style in
+ *   the two lowest bits, then underline, strike, superscript, subscript and whether the text size
+ *   was set rather than left to the default), a reserved byte and the length of its key as a
+ *   short, -1 without a key.
+ * - the texts of the Pieces one after the other, in UTF-16, then their keys the same way.
+ *
+ * Everything is big endian. The records have a fixed size so the composer can read the
+ * attributes of any Piece in place: {@link Composer#compose(ByteBuffer)} and
+ * {@link BabushkaText#bind(ByteBuffer)} copy the texts straight from the buffer into the
+ * composed text, without building any Piece.
+ */
+public final class PieceCodec {
+
+    private static final int MAGIC = 0x424B5431;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 24;
+
+    private PieceCodec() {
+    }
+
+    /**
+     * @param pieces the Pieces to encode
+     * @return the number of bytes they take once encoded
+     */
+    public static int encodedSize(List<Piece> pieces) {
+        int chars = 0;
+        for(int i = 0; i < pieces.size(); i++) {
+            Piece aPiece = pieces.get(i);
+            chars += aPiece.getText().length();
+            if(aPiece.getKey() != null) {
+                chars += aPiece.getKey().length();
+            }
+        }
+        return HEADER_SIZE + pieces.size() * RECORD_SIZE + chars * 2;
+    }
+
+    /**
+     * Encodes Pieces into a new array.
+     *
+     * @param pieces the Pieces to encode
+     * @return the encoded Pieces
+     */
+    public static byte[] encode(List<Piece> pieces) {
+        byte[] encoded = new byte[encodedSize(pieces)];
+        encode(pieces, ByteBuffer.wrap(encoded));
+        return encoded;
+    }
+
+    /**
+     * Encodes Pieces at the position of a buffer, which is moved past them.
+     *
+     * @param pieces the Pieces to encode
+     * @param out the buffer, with at least {@link #encodedSize(List)} bytes remaining
+     */
+    public static void encode(List<Piece> pieces, ByteBuffer out) {
+        int count = pieces.size();
+        int textLength = 0;
+        int keyLength = 0;
+        for(int i = 0; i < count; i++) {
+            Piece aPiece = pieces.get(i);
+            textLength += aPiece.getText().length();
+            if(aPiece.getKey() != null) {
+                keyLength += aPiece.getKey().length();
+            }
+        }
+
+        ByteBuffer buffer = out.duplicate().order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(count);
+        buffer.putInt(textLength);
+        buffer.putInt(keyLength);
+
+        for(int i = 0; i < count; i++) {
+            Piece aPiece = pieces.get(i);
+            String key = aPiece.getKey();
+            if(key != null && key.length() > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Piece key too long: " + key.length());
+            }
+            buffer.putInt(aPiece.getText().length());
+            buffer.putInt(aPiece.getTextColor());
+            buffer.putInt(aPiece.getTextSize());
+            buffer.putInt(aPiece.getBackgroundColor());
+            buffer.putFloat(aPiece.getTextSizeRelative());
+            buffer.put((byte) PackedPieces.flagsOf(aPiece));
+            buffer.put((byte) 0);
+            buffer.putShort((short) (key != null ? key.length() : -1));
+        }
+
+        for(int i = 0; i < count; i++) {
+            putChars(buffer, pieces.get(i).getText());
+        }
+        for(int i = 0; i < count; i++) {
+            String key = pieces.get(i).getKey();
+            if(key != null) {
+                putChars(buffer, key);
+            }
+        }
+        out.position(buffer.position());
+    }
+
+    /**
+     * Decodes Pieces from the position of a buffer, which is moved past them.
+     *
+     * @param in the buffer
+     * @return new Pieces, with their keys
+     * @throws IllegalArgumentException if the buffer doesn't hold encoded Pieces
+     */
+    public static List<Piece> decode(ByteBuffer in) {
+        Records records = read(in);
+        int count = records.size();
+        char[] text = new char[records.getTextLength()];
+        records.getText(text);
+
+        List<Piece> pieces = new ArrayList<>(count);
+        int start = 0;
+        int keyStart = 0;
+        for(int i = 0; i < count; i++) {
+            int length = records.getTextLength(i);
+            Piece.Builder builder = new Piece.Builder(new String(text, start, length))
+                    .textColor(records.valueOf(i, Composition.TEXT_COLOR))
+                    .backgroundColor(records.valueOf(i, Composition.BACKGROUND_COLOR))
+                    .textSizeRelative(Float.intBitsToFloat(
+                            records.valueOf(i, Composition.RELATIVE_SIZE)))
+                    .style(records.valueOf(i, Composition.STYLE));
+            if((records.getFlags(i) & PackedPieces.TEXT_SIZE) != 0) {
+                builder.textSize(records.valueOf(i, Composition.ABSOLUTE_SIZE));
+            }
+            if(records.valueOf(i, Composition.UNDERLINE) != 0) {
+                builder.underline();
+            }
+            if(records.valueOf(i, Composition.STRIKE) != 0) {
+                builder.strike();
+            }
+            if(records.valueOf(i, Composition.SUPERSCRIPT) != 0) {
+                builder.superscript();
+            }
+            if(records.valueOf(i, Composition.SUBSCRIPT) != 0) {
+                builder.subscript();
+            }
+            int keyLength = records.getKeyLength(i);
+            if(keyLength >= 0) {
+                builder.key(records.getKey(keyStart, keyLength));
+                keyStart += keyLength;
+            }
+            pieces.add(builder.build());
+            start += length;
+        }
+        return pieces;
+    }
+
+    /**
+     * Checks the header of encoded Pieces and moves the buffer past them, without decoding them.
+     *
+     * @throws IllegalArgumentException if the buffer doesn't hold encoded Pieces
+     */
+    static Records read(ByteBuffer in) {
+        ByteBuffer buffer = in.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int start = buffer.position();
+        if(buffer.remaining() < HEADER_SIZE || buffer.getInt(start) != MAGIC) {
+            throw new IllegalArgumentException("Not an encoded Piece list");
+        }
+        int count = buffer.getInt(start + 4);
+        int textLength = buffer.getInt(start + 8);
+        int keyLength = buffer.getInt(start + 12);
+        long size = HEADER_SIZE + (long) count * RECORD_SIZE + 2L * textLength + 2L * keyLength;
+        if(count < 0 || textLength < 0 || keyLength < 0 || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated or corrupt Piece list");
+        }
+
+        // the texts and keys of the records must add up to those of the header
+        Records records = new Records(buffer, start + HEADER_SIZE, count, textLength);
+        long texts = 0;
+        long keys = 0;
+        for(int i = 0; i < count; i++) {
+            int length = records.getTextLength(i);
+            int key = records.getKeyLength(i);
+            if(length < 0 || key < -1) {
+                throw new IllegalArgumentException("Corrupt Piece list");
+            }
+            texts += length;
+            keys += Math.max(key, 0);
+        }
+        if(texts != textLength || keys != keyLength) {
+            throw new IllegalArgumentException("Corrupt Piece list");
+        }
+
+        in.position(start + (int) size);
+        return records;
+    }
+
+    private static void putChars(ByteBuffer buffer, CharSequence text) {
+        for(int i = 0; i < text.length(); i++) {
+            buffer.putChar(text.charAt(i));
+        }
+    }
+
+    /**
+     * Encoded Pieces, read in place.
+     */
+    static final class Records implements PieceAttributes {
+
+        private final ByteBuffer mBuffer;
+        private final int mRecordsStart;
+        private final int mTextStart;
+        private final int mCount;
+        private final int mTextLength;
+
+        Records(ByteBuffer buffer, int recordsStart, int count, int textLength) {
+            mBuffer = buffer;
+            mRecordsStart = recordsStart;
+            mTextStart = recordsStart + count * RECORD_SIZE;
+            mCount = count;
+            mTextLength = textLength;
+        }
+
+        @Override
+        public int size() {
+            return mCount;
+        }
+
+        /**
+         * @return the length of the texts of all the Pieces
+         */
+        int getTextLength() {
+            return mTextLength;
+        }
+
+        @Override
+        public int getTextLength(int location) {
+            return mBuffer.getInt(mRecordsStart + location * RECORD_SIZE);
+        }
+
+        int getFlags(int location) {
+            return mBuffer.get(mRecordsStart + location * RECORD_SIZE + 20);
+        }
+
+        int getKeyLength(int location) {
+            return mBuffer.getShort(mRecordsStart + location * RECORD_SIZE + 22);
+        }
+
+        /**
+         * Copies the texts of all the Pieces into an array, in one go.
+         */
+        void getText(char[] dest) {
+            ByteBuffer buffer = mBuffer.duplicate();
+            buffer.position(mTextStart);
+            buffer.order(ByteOrder.BIG_ENDIAN).asCharBuffer().get(dest, 0, mTextLength);
+        }
+
+        /**
+         * @param start where the key starts among the keys, in chars
+         */
+        String getKey(int start, int length) {
+            char[] key = new char[length];
+            int offset = mTextStart + 2 * (mTextLength + start);
+            for(int i = 0; i < length; i++) {
+                key[i] = mBuffer.getChar(offset + 2 * i);
+            }
+            return new String(key);
+        }
+
+        @Override
+        public int valueOf(int location, int kind) {
+            int record = mRecordsStart + location * RECORD_SIZE;
+            switch(kind) {
+                case Composition.ABSOLUTE_SIZE:
+                    return (getFlags(location) & PackedPieces.TEXT_SIZE) != 0
+                            ? mBuffer.getInt(record + 8) : SpanPlanner.NO_TEXT_SIZE;
+                case Composition.RELATIVE_SIZE:
+                    return mBuffer.getInt(record + 16);
+                case Composition.TEXT_COLOR:
+                    return mBuffer.getInt(record + 4);
+                case Composition.BACKGROUND_COLOR:
+                    return mBuffer.getInt(record + 12);
+                default:
+                    return PackedPieces.valueOfFlags(getFlags(location), kind);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.util.Arrays;
+import java.util.List;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * The difference between two lists of Pieces, as a longest common subsequence: the Pieces of the
+ * new list matched by a Piece of the old one are reused, the others are inserted, and the old
+ * Pieces left unmatched are removed. Returned by {@link BabushkaText#setPieces(List)}.
+ *
+ * Two Pieces match if they are the same instance, or if they show the same text with the same
+ * attributes. Past a common prefix and suffix, lists differing by hundreds of Pieces aren't
+ * matched: their middle counts as removed and inserted, and the view composes it again.
+ */
+public final class PieceDiff {
+
+    // above this many cells (256 KiB), the table of the common subsequence takes too much memory
+    // and time, and the differing middle of the lists is replaced as a whole
+    private static final int MAX_TABLE_SIZE = 1 << 16;
+
+    // for each old Piece, the index of the new Piece it matched, or -1 if it was removed
+    private final int[] mNewIndices;
+    // for each new Piece, the index of the old Piece it matched, or -1 if it was inserted
+    private final int[] mOldIndices;
+    private final int mReusedCount;
+    // false if the middle of the lists was too large to match
+    private final boolean mComplete;
+
+    private PieceDiff(int[] newIndices, int[] oldIndices, int reusedCount, boolean complete) {
+        mNewIndices = newIndices;
+        mOldIndices = oldIndices;
+        mReusedCount = reusedCount;
+        mComplete = complete;
+    }
+
+    /**
+     * Matches the Pieces of two lists, keeping their order.
+     */
+    static PieceDiff compute(List<Piece> oldPieces, List<Piece> newPieces) {
+        int oldCount = oldPieces.size();
+        int newCount = newPieces.size();
+        int[] newIndices = new int[oldCount];
+        int[] oldIndices = new int[newCount];
+        Arrays.fill(newIndices, -1);
+        Arrays.fill(oldIndices, -1);
+        int reused = 0;
+
+        // refreshes usually change a few Pieces, so most of both lists is a common prefix and
+        // suffix, matched without a table
+        int prefix = 0;
+        while(prefix < oldCount && prefix < newCount
+                && matches(oldPieces.get(prefix), newPieces.get(prefix))) {
+            newIndices[prefix] = prefix;
+            oldIndices[prefix] = prefix;
+            prefix++;
+            reused++;
+        }
+        int oldEnd = oldCount;
+        int newEnd = newCount;
+        while(oldEnd > prefix && newEnd > prefix
+                && matches(oldPieces.get(oldEnd - 1), newPieces.get(newEnd - 1))) {
+            oldEnd--;
+            newEnd--;
+            newIndices[oldEnd] = newEnd;
+            oldIndices[newEnd] = oldEnd;
+            reused++;
+        }
+
+        int rows = oldEnd - prefix;
+        int columns = newEnd - prefix;
+        boolean complete = true;
+        if(rows > 0 && columns > 0) {
+            if((long) (rows + 1) * (columns + 1) <= MAX_TABLE_SIZE) {
+                reused += matchMiddle(oldPieces, newPieces, prefix, rows, columns, newIndices,
+                        oldIndices);
+            } else {
+                complete = false;
+            }
+        }
+        return new PieceDiff(newIndices, oldIndices, reused, complete);
+    }
+
+    /**
+     * Matches the differing middle of the lists with the classic dynamic programming table, where
+     * each cell holds the length of the longest common subsequence of the suffixes starting there.
+     *
+     * @return the number of Pieces matched
+     */
+    private static int matchMiddle(List<Piece> oldPieces, List<Piece> newPieces, int offset,
+            int rows, int columns, int[] newIndices, int[] oldIndices) {
+        // hashes rule out most pairs without comparing their text
+        int[] oldHashes = new int[rows];
+        int[] newHashes = new int[columns];
+        for(int i = 0; i < rows; i++) {
+            oldHashes[i] = oldPieces.get(offset + i).contentHashCode();
+        }
+        for(int j = 0; j < columns; j++) {
+            newHashes[j] = newPieces.get(offset + j).contentHashCode();
+        }
+
+        int width = columns + 1;
+        int[] table = new int[(rows + 1) * width];
+        for(int i = rows - 1; i >= 0; i--) {
+            for(int j = columns - 1; j >= 0; j--) {
+                if(oldHashes[i] == newHashes[j]
+                        && matches(oldPieces.get(offset + i), newPieces.get(offset + j))) {
+                    table[i * width + j] = table[(i + 1) * width + j + 1] + 1;
+                } else {
+                    table[i * width + j] = Math.max(table[(i + 1) * width + j],
+                            table[i * width + j + 1]);
+                }
+            }
+        }
+
+        int matched = 0;
+        int i = 0;
+        int j = 0;
+        while(i < rows && j < columns) {
+            if(oldHashes[i] == newHashes[j]
+                    && table[i * width + j] == table[(i + 1) * width + j + 1] + 1
+                    && matches(oldPieces.get(offset + i), newPieces.get(offset + j))) {
+                newIndices[offset + i] = offset + j;
+                oldIndices[offset + j] = offset + i;
+                matched++;
+                i++;
+                j++;
+            } else if(table[(i + 1) * width + j] >= table[i * width + j + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return matched;
+    }
+
+    private static boolean matches(Piece oldPiece, Piece newPiece) {
+        return oldPiece == newPiece || oldPiece.sameContentAs(newPiece);
+    }
+
+    /**
+     * @return the index of the new Piece an old one matched, or -1 if it was removed
+     */
+    int getNewIndex(int oldIndex) {
+        return mNewIndices[oldIndex];
+    }
+
+    /**
+     * @return the index of the old Piece a new one matched, or -1 if it was inserted
+     */
+    int getOldIndex(int newIndex) {
+        return mOldIndices[newIndex];
+    }
+
+    /**
+     * @return false if the differing middle of the lists was too large to match, in which case
+     * editing the displayed text Piece by Piece costs more than composing it again
+     */
+    boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * @return the number of new Pieces which matched an old one, and kept its displayed text
+     */
+    public int getReusedCount() {
+        return mReusedCount;
+    }
+
+    /**
+     * @return the number of new Pieces which matched none of the old ones
+     */
+    public int getInsertedCount() {
+        return mOldIndices.length - mReusedCount;
+    }
+
+    /**
+     * @return the number of old Pieces which matched none of the new ones
+     */
+    public int getRemovedCount() {
+        return mNewIndices.length - mReusedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PieceDiff[reused=" + mReusedCount + ",inserted=" + getInsertedCount()
+                + ",removed=" + getRemovedCount() + "]";
+    }
+}
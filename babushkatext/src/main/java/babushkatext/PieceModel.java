@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * An immutable list of Pieces, detached from any view. Models with the same text and attributes
+ * are equal, so they can key caches: binding a model to a {@link BabushkaText} with
+ * {@link BabushkaText#bind(PieceModel)} reuses the text composed for an equal model through the
+ * {@link ComposedTextCache}.
+ *
+ * A model takes a copy of the Pieces it is created from, so they can still be modified or shown
+ * afterwards without affecting it.
+ */
+public final class PieceModel {
+
+    // private copies, never handed out nor modified
+    private final List<Piece> mPieces;
+    private final int mLength;
+    private final int mHashCode;
+
+    private PieceModel(List<Piece> pieces) {
+        List<Piece> copies = new ArrayList<>(pieces.size());
+        int length = 0;
+        int hashCode = 1;
+        for(int i = 0; i < pieces.size(); i++) {
+            Piece copy = pieces.get(i).copy();
+            copies.add(copy);
+            length += copy.getText().length();
+            hashCode = 31 * hashCode + copy.contentHashCode();
+        }
+        mPieces = Collections.unmodifiableList(copies);
+        mLength = length;
+        mHashCode = hashCode;
+    }
+
+    /**
+     * @param pieces the Pieces of the model, in display order
+     * @return a model holding a copy of the Pieces
+     */
+    public static PieceModel of(List<Piece> pieces) {
+        return new PieceModel(pieces);
+    }
+
+    /**
+     * @return the number of Pieces of this model
+     */
+    public int getPieceCount() {
+        return mPieces.size();
+    }
+
+    /**
+     * @return the number of characters of the text of this model
+     */
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * @return new Pieces with the content of this model, free to be modified
+     */
+    public List<Piece> newPieces() {
+        List<Piece> pieces = new ArrayList<>(mPieces.size());
+        for(int i = 0; i < mPieces.size(); i++) {
+            pieces.add(mPieces.get(i).copy());
+        }
+        return pieces;
+    }
+
+    /**
+     * @return the Pieces of this model, which must not be modified
+     */
+    List<Piece> getPieces() {
+        return mPieces;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof PieceModel)) {
+            return false;
+        }
+        PieceModel other = (PieceModel) o;
+        if(mHashCode != other.mHashCode || mLength != other.mLength
+                || mPieces.size() != other.mPieces.size()) {
+            return false;
+        }
+        for(int i = 0; i < mPieces.size(); i++) {
+            if(!mPieces.get(i).sameContentAs(other.mPieces.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+}
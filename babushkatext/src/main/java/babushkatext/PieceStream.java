@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * A stream of text updates for one {@link Piece} of a {@link BabushkaText}, such as a price bound
+ * to a market data feed. Open one with {@link BabushkaText#openStream(Piece)}.
+ *
+ * Updates may be pushed from any thread. Only the latest one matters: values pushed faster than
+ * the view displays them replace each other, and the view shows the latest one at most
+ * {@link BabushkaText#setMaxStreamRate(int)} times per second.
+ */
+public final class PieceStream {
+
+    private final BabushkaText mView;
+    private final Piece mPiece;
+
+    // the latest value not displayed yet, if any
+    private final AtomicReference<String> mPending = new AtomicReference<>();
+
+    private final AtomicInteger mReceivedCount = new AtomicInteger();
+    private volatile int mAppliedCount;
+    private volatile boolean mClosed;
+
+    PieceStream(BabushkaText view, Piece piece) {
+        mView = view;
+        mPiece = piece;
+    }
+
+    /**
+     * Pushes a new text for the Piece, replacing any value which wasn't displayed yet.
+     * Can be called from any thread.
+     *
+     * @param text the new text of the Piece
+     */
+    public void push(String text) {
+        if(mClosed) {
+            return;
+        }
+        mReceivedCount.incrementAndGet();
+        mPending.set(text);
+        mView.scheduleStreamDrain();
+    }
+
+    /**
+     * Sets the latest pushed value as the text of the Piece. Only called on the UI thread.
+     *
+     * @return true if the Piece was modified
+     */
+    boolean apply() {
+        String text = mPending.getAndSet(null);
+        if(text == null || mClosed) {
+            return false;
+        }
+        mPiece.setText(text);
+        mAppliedCount++;
+        return true;
+    }
+
+    /**
+     * Stops this stream. Values pushed afterwards, or not displayed yet, are ignored. The counts of
+     * this stream remain part of those of the view.
+     */
+    public void close() {
+        if(mClosed) {
+            return;
+        }
+        mClosed = true;
+        mPending.set(null);
+        mView.closeStream(this);
+    }
+
+    /**
+     * @return the Piece updated by this stream
+     */
+    public Piece getPiece() {
+        return mPiece;
+    }
+
+    /**
+     * @return the number of values pushed to this stream
+     */
+    public int getReceivedCount() {
+        return mReceivedCount.get();
+    }
+
+    /**
+     * @return the number of values which made it to the Piece. The others were replaced by a
+     * newer value before they could be displayed.
+     */
+    public int getAppliedCount() {
+        return mAppliedCount;
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import android.graphics.Color;
+import android.graphics.Typeface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * The shape of a styled text, such as a card of a list, compiled once from a compact markup and
+ * then bound to views with different values for its slots:
+ *
+ * <pre>
+ * PieceTemplate card = PieceTemplate.compile(
+ *         "[#0081E2]#{rank} of {count} [#969696]in {city}\n[#F7B53F bold]${price}");
+ *
+ * babushka.bind(card, "6", "434", "New York City", "540");
+ * </pre>
+ *
+ * The markup is made of:
+ *
+ * - styles, such as [#969696 bold], starting a new Piece. Attributes are separated by spaces:
+ *   #RRGGBB or #AARRGGBB for the text color, bg#RRGGBB for the background color, 18px for the text
+ *   size, 0.9x for the relative text size, and bold, italic, underline, strike, sup or sub. []
+ *   starts a Piece with the default attributes, those of a new {@link Piece.Builder}.
+ * - slots, such as {price}, filled in when binding. A name used twice gets the same value.
+ * - any other text, shown as is. [[ and {{ stand for [ and {.
+ *
+ * The styles never change, so the spans styling a template are worked out once for each view
+ * text size and color, and shared by every view the template is bound to. The last few sets of
+ * view defaults are kept. Binding only copies the values into the text: no Piece is built and
+ * nothing is composed.
+ */
+public final class PieceTemplate {
+
+    private static final int CACHE_SIZE = 64;
+
+    // views of an app use a handful of text sizes and colors
+    private static final int MAX_PLANS = 8;
+
+    // the templates compiled last, by markup
+    private static final Map<String, PieceTemplate> CACHE =
+            new LinkedHashMap<String, PieceTemplate>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PieceTemplate> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private final String mMarkup;
+
+    // the style of each Piece, its flags being those of PackedPieces; a text size only counts if
+    // the TEXT_SIZE flag is set, the view's being used otherwise
+    private final int[] mTextColors;
+    private final int[] mBackgroundColors;
+    private final int[] mTextSizes;
+    private final float[] mRelativeSizes;
+    private final int[] mFlags;
+
+    // the text of the Pieces, in order: each part is a literal text or a slot
+    private final int[] mPartPieces;
+    private final String[] mPartTexts;
+    private final int[] mPartSlots;
+
+    private final String[] mSlotNames;
+
+    // the runs planned for the view defaults seen last, most recent first; replaced as a whole
+    // so that lookups don't lock
+    private volatile Plan[] mPlans = new Plan[0];
+
+    /**
+     * Compiles a markup into a template, or returns the template compiled for it earlier. Can be
+     * called from any thread.
+     *
+     * @param markup the markup, see {@link PieceTemplate}
+     * @return the template
+     * @throws IllegalArgumentException if the markup is malformed
+     */
+    public static PieceTemplate compile(String markup) {
+        synchronized(CACHE) {
+            PieceTemplate template = CACHE.get(markup);
+            if(template != null) {
+                return template;
+            }
+        }
+        PieceTemplate template = new Parser(markup).parse();
+        synchronized(CACHE) {
+            CACHE.put(markup, template);
+        }
+        return template;
+    }
+
+    private PieceTemplate(String markup, Parser parser) {
+        mMarkup = markup;
+        int pieceCount = parser.mStyles.size();
+        mTextColors = new int[pieceCount];
+        mBackgroundColors = new int[pieceCount];
+        mTextSizes = new int[pieceCount];
+        mRelativeSizes = new float[pieceCount];
+        mFlags = new int[pieceCount];
+        for(int i = 0; i < pieceCount; i++) {
+            Style style = parser.mStyles.get(i);
+            mTextColors[i] = style.textColor;
+            mBackgroundColors[i] = style.backgroundColor;
+            mTextSizes[i] = style.textSize;
+            mRelativeSizes[i] = style.textSizeRelative;
+            mFlags[i] = style.flags;
+        }
+
+        int partCount = parser.mPartTexts.size();
+        mPartPieces = new int[partCount];
+        mPartTexts = parser.mPartTexts.toArray(new String[partCount]);
+        mPartSlots = new int[partCount];
+        for(int i = 0; i < partCount; i++) {
+            mPartPieces[i] = parser.mPartPieces.get(i);
+            mPartSlots[i] = parser.mPartSlots.get(i);
+        }
+        mSlotNames = parser.mSlotNames.toArray(new String[parser.mSlotNames.size()]);
+    }
+
+    /**
+     * @return the markup this template was compiled from
+     */
+    public String getMarkup() {
+        return mMarkup;
+    }
+
+    /**
+     * @return the number of distinct slots, which is the number of values to bind
+     */
+    public int getSlotCount() {
+        return mSlotNames.length;
+    }
+
+    /**
+     * @param name the name of a slot
+     * @return the position of its value when binding, or -1 if the template has no such slot
+     */
+    public int indexOfSlot(String name) {
+        for(int i = 0; i < mSlotNames.length; i++) {
+            if(mSlotNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds the Pieces of this template, e.g. to add them to a view along with other Pieces.
+     *
+     * @param values the values of the slots, in the order they first appear in the markup
+     * @return new Pieces
+     */
+    public List<Piece> newPieces(CharSequence... values) {
+        checkValues(values);
+        int pieceCount = getPieceCount();
+        List<Piece> pieces = new ArrayList<>(pieceCount);
+        int part = 0;
+        for(int i = 0; i < pieceCount; i++) {
+            StringBuilder text = new StringBuilder();
+            for(; part < mPartPieces.length && mPartPieces[part] == i; part++) {
+                text.append(mPartSlots[part] >= 0 ? values[mPartSlots[part]] : mPartTexts[part]);
+            }
+            Piece.Builder builder = newBuilder(i, text.toString());
+            if((mFlags[i] & PackedPieces.TEXT_SIZE) != 0) {
+                builder.textSize(mTextSizes[i]);
+            }
+            pieces.add(builder.build());
+        }
+        return pieces;
+    }
+
+    void checkValues(CharSequence[] values) {
+        if(values.length != mSlotNames.length) {
+            throw new IllegalArgumentException("Expected " + mSlotNames.length + " values, got "
+                    + values.length);
+        }
+    }
+
+    int getPieceCount() {
+        return mTextColors.length;
+    }
+
+    int getPartCount() {
+        return mPartPieces.length;
+    }
+
+    int getPartPiece(int part) {
+        return mPartPieces[part];
+    }
+
+    /**
+     * @return the literal text of a part, or null if it's a slot
+     */
+    String getPartText(int part) {
+        return mPartTexts[part];
+    }
+
+    /**
+     * @return the slot of a part, or -1 if it's a literal text
+     */
+    int getPartSlot(int part) {
+        return mPartSlots[part];
+    }
+
+    /**
+     * Returns the runs styling this template in a view with these defaults, with their spans.
+     * Both are shared by every view with the same defaults and must not be modified.
+     *
+     * Runs are planned as if every Piece had some text: those covering only Pieces left empty by
+     * their values have no room to be applied.
+     */
+    SpanPlan getPlan(int textSize, int textColor, boolean hasTextColor) {
+        for(Plan plan : mPlans) {
+            if(plan.textSize == textSize && plan.textColor == textColor
+                    && plan.hasTextColor == hasTextColor) {
+                return plan.runs;
+            }
+        }
+
+        List<Piece> styles = new ArrayList<>(getPieceCount());
+        for(int i = 0; i < getPieceCount(); i++) {
+            styles.add(newBuilder(i, " ")
+                    .textSize((mFlags[i] & PackedPieces.TEXT_SIZE) != 0 ? mTextSizes[i] : textSize)
+                    .build());
+        }
+        Composer composer = new Composer();
+        composer.setDefaults(textSize, textColor, hasTextColor);
+        SpanPlan runs = new SpanPlan();
+        composer.plan(styles, runs);
+
+        Set<Object> spansInUse = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        for(int run = 0; run < runs.size(); run++) {
+            runs.setSpanAt(run, SpannableAdapter.obtainSpan(runs.kindAt(run), runs.valueAt(run),
+                    spansInUse));
+        }
+        addPlan(new Plan(textSize, textColor, hasTextColor, runs));
+        return runs;
+    }
+
+    /**
+     * Keeps a plan, dropping the oldest one if there are too many. Two threads planning the same
+     * defaults at once may both keep theirs, which only costs a slot.
+     */
+    private synchronized void addPlan(Plan plan) {
+        Plan[] plans = mPlans;
+        Plan[] updated = new Plan[Math.min(plans.length + 1, MAX_PLANS)];
+        updated[0] = plan;
+        System.arraycopy(plans, 0, updated, 1, updated.length - 1);
+        mPlans = updated;
+    }
+
+    private Piece.Builder newBuilder(int piece, String text) {
+        return PackedPieces.applyFlags(new Piece.Builder(text)
+                .textColor(mTextColors[piece])
+                .backgroundColor(mBackgroundColors[piece])
+                .textSizeRelative(mRelativeSizes[piece]), mFlags[piece]);
+    }
+
+    /**
+     * The runs planned for one set of view defaults.
+     */
+    private static final class Plan {
+
+        final int textSize;
+        final int textColor;
+        final boolean hasTextColor;
+        final SpanPlan runs;
+
+        Plan(int textSize, int textColor, boolean hasTextColor, SpanPlan runs) {
+            this.textSize = textSize;
+            this.textColor = textColor;
+            this.hasTextColor = hasTextColor;
+            this.runs = runs;
+        }
+    }
+
+    /**
+     * The attributes of a Piece, as written in the markup.
+     */
+    private static final class Style {
+
+        int textColor = Color.BLACK;
+        int backgroundColor = -1;
+        int textSize;
+        float textSizeRelative = 1;
+        // the style and the boolean attributes, as PackedPieces flags them
+        int flags = Typeface.NORMAL;
+    }
+
+    private static final class Parser {
+
+        private final String mMarkup;
+        private final List<Style> mStyles = new ArrayList<>();
+        private final List<Integer> mPartPieces = new ArrayList<>();
+        private final List<String> mPartTexts = new ArrayList<>();
+        private final List<Integer> mPartSlots = new ArrayList<>();
+        private final List<String> mSlotNames = new ArrayList<>();
+
+        // the style of the next Piece, which starts with the next text or slot
+        private Style mStyle = new Style();
+        private boolean mPieceStarted;
+
+        Parser(String markup) {
+            mMarkup = markup;
+        }
+
+        PieceTemplate parse() {
+            StringBuilder literal = new StringBuilder();
+            int i = 0;
+            while(i < mMarkup.length()) {
+                char c = mMarkup.charAt(i);
+                boolean escaped = (c == '[' || c == '{') && i + 1 < mMarkup.length()
+                        && mMarkup.charAt(i + 1) == c;
+                if(escaped || (c != '[' && c != '{')) {
+                    literal.append(c);
+                    i += escaped ? 2 : 1;
+                    continue;
+                }
+
+                int end = mMarkup.indexOf(c == '[' ? ']' : '}', i);
+                if(end < 0) {
+                    throw error("Unclosed " + c, i);
+                }
+                addLiteral(literal);
+                String content = mMarkup.substring(i + 1, end);
+                if(c == '[') {
+                    mStyle = parseStyle(content, i);
+                    mPieceStarted = false;
+                } else {
+                    addSlot(content, i);
+                }
+                i = end + 1;
+            }
+            addLiteral(literal);
+            return new PieceTemplate(mMarkup, this);
+        }
+
+        private void addLiteral(StringBuilder literal) {
+            if(literal.length() > 0) {
+                addPart(literal.toString(), -1);
+                literal.setLength(0);
+            }
+        }
+
+        private void addSlot(String name, int position) {
+            if(name.isEmpty()) {
+                throw error("Empty slot name", position);
+            }
+            int slot = mSlotNames.indexOf(name);
+            if(slot < 0) {
+                slot = mSlotNames.size();
+                mSlotNames.add(name);
+            }
+            addPart(null, slot);
+        }
+
+        private void addPart(String text, int slot) {
+            if(!mPieceStarted) {
+                mStyles.add(mStyle);
+                mPieceStarted = true;
+            }
+            mPartPieces.add(mStyles.size() - 1);
+            mPartTexts.add(text);
+            mPartSlots.add(slot);
+        }
+
+        private Style parseStyle(String content, int position) {
+            Style style = new Style();
+            for(String attribute : content.split(" ")) {
+                try {
+                    parseAttribute(style, attribute);
+                } catch(NumberFormatException e) {
+                    throw error("Bad attribute " + attribute, position);
+                }
+            }
+            return style;
+        }
+
+        private void parseAttribute(Style style, String attribute) {
+            if(attribute.isEmpty()) {
+                return;
+            } else if(attribute.startsWith("bg#")) {
+                style.backgroundColor = parseColor(attribute.substring(2));
+            } else if(attribute.startsWith("#")) {
+                style.textColor = parseColor(attribute);
+            } else if(attribute.endsWith("px")) {
+                style.textSize = Integer.parseInt(attribute.substring(0, attribute.length() - 2));
+                style.flags |= PackedPieces.TEXT_SIZE;
+            } else if(attribute.endsWith("x")) {
+                style.textSizeRelative =
+                        Float.parseFloat(attribute.substring(0, attribute.length() - 1));
+            } else if(attribute.equals("bold")) {
+                style.flags |= Typeface.BOLD;
+            } else if(attribute.equals("italic")) {
+                style.flags |= Typeface.ITALIC;
+            } else if(attribute.equals("underline")) {
+                style.flags |= PackedPieces.UNDERLINE;
+            } else if(attribute.equals("strike")) {
+                style.flags |= PackedPieces.STRIKE;
+            } else if(attribute.equals("sup")) {
+                style.flags |= PackedPieces.SUPERSCRIPT;
+            } else if(attribute.equals("sub")) {
+                style.flags |= PackedPieces.SUBSCRIPT;
+            } else {
+                throw new NumberFormatException();
+            }
+        }
+
+        private static int parseColor(String color) {
+            if(color.length() != 7 && color.length() != 9) {
+                throw new NumberFormatException();
+            }
+            return Color.parseColor(color);
+        }
+
+        private IllegalArgumentException error(String message, int position) {
+            return new IllegalArgumentException(message + " at " + position + " in " + mMarkup);
+        }
+    }
+}
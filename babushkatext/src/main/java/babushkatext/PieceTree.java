@@ -0,0 +1,491 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * The list of Pieces of a {@link BabushkaText} in large document mode: a balanced tree (a treap
+ * ordered by position) where each node also sums the length of the text displayed by its subtree.
+ * Getting, inserting or removing a Piece anywhere, finding its position and finding where its
+ * text starts in the displayed text all take O(log n) instead of O(n).
+ *
+ * The tree also remembers which Pieces must be displayed again: inserted and modified Pieces, and
+ * removed ones, which stay in the tree without counting as elements until their text is deleted
+ * from the display.
+ */
+final class PieceTree extends AbstractList<Piece> {
+
+    static final class Node {
+
+        Piece piece;
+        Node left;
+        Node right;
+        Node parent;
+        private final int priority;
+
+        // false once removed from the list, until the displayed text is deleted
+        boolean live = true;
+        // the number of live Pieces, of displayed characters and of displayed Pieces in this
+        // subtree
+        private int count = 1;
+        private int length;
+        private int displayedCount;
+        // false while the text of this Piece isn't in the displayed text, see show() and hide()
+        boolean displayed;
+        // the number of characters of this Piece in the displayed text
+        int displayedLength;
+
+        // true while waiting in the pending list
+        private boolean pending;
+
+        // spans styling this Piece alone, by kind, and their values
+        Object[] spans;
+        int[] spanValues;
+
+        Node(Piece piece, int priority) {
+            this.piece = piece;
+            this.priority = priority;
+        }
+    }
+
+    private Node mRoot;
+    private int mSeed = 0x2545F491;
+
+    // inserted, modified or removed nodes not displayed yet
+    private final List<Node> mPending = new ArrayList<>();
+
+    PieceTree() {
+    }
+
+    PieceTree(List<Piece> pieces) {
+        for(int i = 0; i < pieces.size(); i++) {
+            add(pieces.get(i));
+        }
+    }
+
+    @Override
+    public int size() {
+        return count(mRoot);
+    }
+
+    @Override
+    public Piece get(int index) {
+        return nodeAt(index).piece;
+    }
+
+    @Override
+    public Piece set(int index, Piece piece) {
+        Node node = nodeAt(index);
+        Piece old = node.piece;
+        release(node);
+        node.piece = piece;
+        piece.node = node;
+        markPending(node);
+        return old;
+    }
+
+    @Override
+    public void add(int index, Piece piece) {
+        if(index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = new Node(piece, nextPriority());
+        piece.node = node;
+
+        Node[] halves = new Node[2];
+        split(mRoot, index, halves);
+        mRoot = merge(merge(halves[0], node), halves[1]);
+        mRoot.parent = null;
+        markPending(node);
+        modCount++;
+    }
+
+    /**
+     * Removes a Piece from the list. Its node stays in the tree until its displayed text is
+     * deleted, see {@link #unlink(Node)}.
+     */
+    @Override
+    public Piece remove(int index) {
+        Node node = nodeAt(index);
+        node.live = false;
+        release(node);
+        updateToRoot(node);
+        markPending(node);
+        modCount++;
+        return node.piece;
+    }
+
+    @Override
+    public void clear() {
+        detach();
+        mRoot = null;
+        mPending.clear();
+        modCount++;
+    }
+
+    /**
+     * @return the position of a Piece of this tree
+     */
+    int indexOf(Node node) {
+        int index = count(node.left);
+        for(Node child = node, parent = node.parent; parent != null;
+                child = parent, parent = parent.parent) {
+            if(parent.right == child) {
+                index += count(parent.left) + (parent.live ? 1 : 0);
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if(o instanceof Piece && ((Piece) o).node != null && contains(((Piece) o).node)) {
+            return indexOf(((Piece) o).node);
+        }
+        return -1;
+    }
+
+    /**
+     * @return where the text of a node starts in the displayed text
+     */
+    int offsetOf(Node node) {
+        int offset = length(node.left);
+        for(Node child = node, parent = node.parent; parent != null;
+                child = parent, parent = parent.parent) {
+            if(parent.right == child) {
+                offset += length(parent.left) + parent.displayedLength;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * @return the number of characters displayed by the whole tree
+     */
+    int displayedLength() {
+        return length(mRoot);
+    }
+
+    /**
+     * Records that the text of a node is displayed, and how many characters it has.
+     */
+    void show(Node node, int length) {
+        node.displayed = true;
+        node.displayedLength = length;
+        updateToRoot(node);
+    }
+
+    /**
+     * Records that the text of a node isn't displayed anymore.
+     */
+    void hide(Node node) {
+        node.displayed = false;
+        node.displayedLength = 0;
+        updateToRoot(node);
+    }
+
+    /**
+     * @return the first node whose text is displayed, or null
+     */
+    Node firstDisplayed() {
+        Node node = mRoot;
+        if(displayedCount(node) == 0) {
+            return null;
+        }
+        while(true) {
+            if(displayedCount(node.left) > 0) {
+                node = node.left;
+            } else if(node.displayed) {
+                return node;
+            } else {
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * @return the last node whose text is displayed, or null
+     */
+    Node lastDisplayed() {
+        Node node = mRoot;
+        if(displayedCount(node) == 0) {
+            return null;
+        }
+        while(true) {
+            if(displayedCount(node.right) > 0) {
+                node = node.right;
+            } else if(node.displayed) {
+                return node;
+            } else {
+                node = node.left;
+            }
+        }
+    }
+
+    /**
+     * Marks a node as needing to be displayed again.
+     */
+    void markPending(Node node) {
+        if(!node.pending) {
+            node.pending = true;
+            mPending.add(node);
+        }
+    }
+
+    /**
+     * @return true if some nodes are waiting to be displayed
+     */
+    boolean hasPending() {
+        return !mPending.isEmpty();
+    }
+
+    /**
+     * Moves the nodes waiting to be displayed into a list, and forgets them.
+     */
+    void takePending(List<Node> out) {
+        for(int i = 0; i < mPending.size(); i++) {
+            Node node = mPending.get(i);
+            node.pending = false;
+            out.add(node);
+        }
+        mPending.clear();
+    }
+
+    /**
+     * Takes a removed node out of the tree, once its text isn't displayed anymore.
+     */
+    void unlink(Node node) {
+        Node replacement = merge(node.left, node.right);
+        Node parent = node.parent;
+        if(replacement != null) {
+            replacement.parent = parent;
+        }
+        if(parent == null) {
+            mRoot = replacement;
+        } else {
+            if(parent.left == node) {
+                parent.left = replacement;
+            } else {
+                parent.right = replacement;
+            }
+            updateToRoot(parent);
+        }
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+    }
+
+    /**
+     * Drops the removed nodes and forgets the pending ones, after the whole text was displayed
+     * again from scratch.
+     */
+    void purge(List<Node> scratch) {
+        takePending(scratch);
+        for(int i = 0; i < scratch.size(); i++) {
+            Node node = scratch.get(i);
+            if(!node.live && contains(node)) {
+                unlink(node);
+            }
+        }
+        scratch.clear();
+    }
+
+    /**
+     * @return the first node in display order, removed or not
+     */
+    Node first() {
+        Node node = mRoot;
+        while(node != null && node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    /**
+     * @return the node following this one in display order, or null
+     */
+    static Node next(Node node) {
+        if(node.right != null) {
+            node = node.right;
+            while(node.left != null) {
+                node = node.left;
+            }
+            return node;
+        }
+        while(node.parent != null && node.parent.right == node) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    /**
+     * Recomputes the sums of every node, after their displayed text was set directly.
+     */
+    void updateAll() {
+        updateSubtree(mRoot);
+    }
+
+    /**
+     * Lets go of the Pieces, which won't be in this tree anymore.
+     */
+    void detach() {
+        for(Node node = first(); node != null; node = next(node)) {
+            if(node.live) {
+                release(node);
+            }
+        }
+    }
+
+    /**
+     * Unlinks the Piece of a node from it, unless the Piece moved to another node meanwhile.
+     */
+    private static void release(Node node) {
+        if(node.piece.node == node) {
+            node.piece.node = null;
+        }
+    }
+
+    private boolean contains(Node node) {
+        while(node.parent != null) {
+            node = node.parent;
+        }
+        return node == mRoot;
+    }
+
+    /**
+     * @return the node of the Piece at a position
+     */
+    Node nodeAt(int index) {
+        if(index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = mRoot;
+        while(true) {
+            int leftCount = count(node.left);
+            if(index < leftCount) {
+                node = node.left;
+            } else if(node.live && index == leftCount) {
+                return node;
+            } else {
+                index -= leftCount + (node.live ? 1 : 0);
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Splits a subtree into the nodes before the given number of live Pieces and the others.
+     * Removed nodes at the boundary go to the right.
+     */
+    private static void split(Node node, int index, Node[] halves) {
+        if(node == null) {
+            halves[0] = null;
+            halves[1] = null;
+            return;
+        }
+        int leftCount = count(node.left);
+        if(index <= leftCount) {
+            split(node.left, index, halves);
+            node.left = halves[1];
+            if(node.left != null) {
+                node.left.parent = node;
+            }
+            update(node);
+            halves[1] = node;
+        } else {
+            split(node.right, index - leftCount - (node.live ? 1 : 0), halves);
+            node.right = halves[0];
+            if(node.right != null) {
+                node.right.parent = node;
+            }
+            update(node);
+            halves[0] = node;
+        }
+        node.parent = null;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if(left == null) {
+            return right;
+        }
+        if(right == null) {
+            return left;
+        }
+        if(left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.right.parent = left;
+            update(left);
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            right.left.parent = right;
+            update(right);
+            return right;
+        }
+    }
+
+    private static void update(Node node) {
+        node.count = count(node.left) + count(node.right) + (node.live ? 1 : 0);
+        node.length = length(node.left) + length(node.right) + node.displayedLength;
+        node.displayedCount = displayedCount(node.left) + displayedCount(node.right)
+                + (node.displayed ? 1 : 0);
+    }
+
+    private static void updateToRoot(Node node) {
+        for(; node != null; node = node.parent) {
+            update(node);
+        }
+    }
+
+    private static void updateSubtree(Node node) {
+        if(node != null) {
+            updateSubtree(node.left);
+            updateSubtree(node.right);
+            update(node);
+        }
+    }
+
+    private static int count(Node node) {
+        return node != null ? node.count : 0;
+    }
+
+    private static int length(Node node) {
+        return node != null ? node.length : 0;
+    }
+
+    private static int displayedCount(Node node) {
+        return node != null ? node.displayedCount : 0;
+    }
+
+    /**
+     * A xorshift generator, enough to balance the tree without allocating a Random.
+     */
+    private int nextPriority() {
+        int x = mSeed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        mSeed = x;
+        return x;
+    }
+}
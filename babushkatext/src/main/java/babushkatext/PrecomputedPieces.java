@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import android.os.Build;
+import android.os.Looper;
+import android.text.Layout;
+import android.text.SpannableStringBuilder;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * The styled and measured text of a list of Pieces, computed ahead of time and ready to be shown
+ * by a {@link BabushkaText} with {@link BabushkaText#setPrecomputed(PrecomputedPieces)}.
+ *
+ * Composing and measuring can happen on a background thread, such as when binding list items, so
+ * the UI thread only has to apply the result:
+ *
+ * <pre>
+ * PrecomputedPieces.Params params = babushka.getPrecomputeParams();
+ * Future&lt;PrecomputedPieces&gt; future = PrecomputedPieces.createAsync(pieces, params, executor);
+ * ...
+ * babushka.setPrecomputed(future.get());
+ * </pre>
+ *
+ * A PrecomputedPieces never changes once created. The Pieces must not be modified while it is
+ * being created; modifications made afterwards are displayed by the next display().
+ */
+public final class PrecomputedPieces {
+
+    private final List<Piece> mPieces;
+    private final int[] mModCounts;
+    private final Params mParams;
+    private final Composition mComposition;
+    private final Object[] mSpans;
+
+    // styled text, never modified after creation: views show a copy of it
+    private final SpannableStringBuilder mText;
+
+    private PrecomputedPieces(List<Piece> pieces, Params params) {
+        int count = pieces.size();
+        mPieces = Collections.unmodifiableList(new ArrayList<>(pieces));
+        mModCounts = new int[count];
+        for(int i = 0; i < count; i++) {
+            mModCounts[i] = pieces.get(i).getModCount();
+        }
+        mParams = params;
+
+        Composer composer = new Composer();
+        composer.setDefaults(params.textSize, params.textColor, params.hasTextColor);
+        mComposition = composer.compose(mPieces);
+
+        mText = new SpannableStringBuilder(mComposition);
+        mSpans = new Object[mComposition.getRunCount()];
+        Set<Object> spansInUse = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        for(int run = 0; run < mSpans.length; run++) {
+            int kind = mComposition.getRunKind(run);
+            mSpans[run] = SpannableAdapter.obtainSpan(kind, mComposition.getRunValue(run),
+                    spansInUse);
+            SpannableAdapter.setSpan(mText, mSpans[run], kind, mComposition.getRunStart(run),
+                    mComposition.getRunEnd(run));
+        }
+
+        measure();
+    }
+
+    /**
+     * Composes and measures the text of these Pieces on the calling thread, which doesn't need to
+     * be the UI thread. Measuring only happens off the UI thread.
+     *
+     * @param pieces the Pieces, in display order
+     * @param params the parameters of the view which will show the text
+     * @return the precomputed text
+     */
+    public static PrecomputedPieces create(List<Piece> pieces, Params params) {
+        return new PrecomputedPieces(pieces, params);
+    }
+
+    /**
+     * Composes and measures the text of these Pieces on an executor.
+     *
+     * @param pieces the Pieces, in display order
+     * @param params the parameters of the view which will show the text
+     * @param executor the executor running the work, typically a background thread pool
+     * @return the future precomputed text
+     */
+    public static Future<PrecomputedPieces> createAsync(final List<Piece> pieces,
+            final Params params, Executor executor) {
+        FutureTask<PrecomputedPieces> task = new FutureTask<>(new Callable<PrecomputedPieces>() {
+            @Override
+            public PrecomputedPieces call() {
+                return create(pieces, params);
+            }
+        });
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Lays the text out once, off the UI thread. The layout is thrown away, but the glyph
+     * measurements it made stay in the text layout cache of the platform, so laying out the view
+     * afterwards mostly reads from the cache.
+     *
+     * On the UI thread, such as when a view binds a model missing from the
+     * {@link ComposedTextCache}, the view lays the text out right after anyway, so measuring it
+     * first would only double the work.
+     */
+    private void measure() {
+        // before Ice Cream Sandwich text measurements aren't cached, so measuring ahead of time
+        // would only double the work
+        if(mParams.width <= 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH
+                || Looper.getMainLooper().getThread() == Thread.currentThread()) {
+            return;
+        }
+
+        // paints can't be shared between threads
+        TextPaint paint = new TextPaint();
+        paint.set(mParams.paint);
+        new StaticLayout(mText, paint, mParams.width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f,
+                true);
+    }
+
+    List<Piece> getPieces() {
+        return mPieces;
+    }
+
+    int getModCount(int piece) {
+        return mModCounts[piece];
+    }
+
+    Params getParams() {
+        return mParams;
+    }
+
+    Composition getComposition() {
+        return mComposition;
+    }
+
+    Object getSpan(int run) {
+        return mSpans[run];
+    }
+
+    SpannableStringBuilder getText() {
+        return mText;
+    }
+
+    /**
+     * The properties of a {@link BabushkaText} that shape its text, captured on the UI thread with
+     * {@link BabushkaText#getPrecomputeParams()}. A view whose properties changed since doesn't
+     * use the precomputed text, and composes it again instead.
+     */
+    public static final class Params {
+
+        private final int textSize;
+        private final int textColor;
+        private final boolean hasTextColor;
+        private final TextPaint paint;
+        private final int width;
+
+        Params(int textSize, int textColor, boolean hasTextColor, TextPaint paint, int width) {
+            this.textSize = textSize;
+            this.textColor = textColor;
+            this.hasTextColor = hasTextColor;
+            this.paint = new TextPaint();
+            this.paint.set(paint);
+            this.width = width;
+        }
+
+        int getTextSize() {
+            return textSize;
+        }
+
+        int getTextColor() {
+            return textColor;
+        }
+
+        boolean hasTextColor() {
+            return hasTextColor;
+        }
+
+        /**
+         * @return true if text composed with these parameters is styled the same way as text
+         * composed with the other ones.
+         */
+        boolean isCompatibleWith(Params other) {
+            // without a view color, every Piece gets its own color span whatever the view's, as
+            // ComposedTextCache has it
+            return textSize == other.textSize
+                    && hasTextColor == other.hasTextColor
+                    && (!hasTextColor || textColor == other.textColor);
+        }
+
+        /**
+         * @return true if these parameters were captured from a view with these properties, its
+         * paint measuring text the same way
+         */
+        boolean matches(int textSize, int textColor, boolean hasTextColor, TextPaint paint,
+                int width) {
+            return this.textSize == textSize
+                    && this.textColor == textColor
+                    && this.hasTextColor == hasTextColor
+                    && this.width == width
+                    && this.paint.getFlags() == paint.getFlags()
+                    && this.paint.getTextSize() == paint.getTextSize()
+                    && this.paint.getTextScaleX() == paint.getTextScaleX()
+                    && this.paint.getTextSkewX() == paint.getTextSkewX()
+                    && this.paint.getTypeface() == paint.getTypeface();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import android.text.style.AbsoluteSizeSpan;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StrikethroughSpan;
+import android.text.style.StyleSpan;
+import android.text.style.SubscriptSpan;
+import android.text.style.SuperscriptSpan;
+import android.text.style.UnderlineSpan;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process-wide cache of the spans used by every {@link BabushkaText}. The spans BabushkaText
+ * applies are immutable, so all the views showing the same color, size or style can share a
+ * single instance instead of allocating a new one on each display().
+ *
+ * The cache is bounded and evicts the least recently used spans first. Evicted spans stay valid
+ * wherever they are already applied, they just stop being handed out.
+ *
+ * Note that a span can only be applied once to a given text, so a view which needs the same
+ * attribute on two separate ranges asks for a new span for the second one with
+ * {@link #newSpan(int, int)}.
+ */
+public final class SpanCache {
+
+    private static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final SpanCache INSTANCE = new SpanCache(DEFAULT_MAX_SIZE);
+
+    private final LinkedHashMap<Key, Object> mSpans;
+
+    // reused for lookups so a hit doesn't allocate
+    private final Key mLookupKey = new Key(0, 0);
+
+    private int mMaxSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    private SpanCache(int maxSize) {
+        mMaxSize = maxSize;
+        mSpans = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                if(size() > mMaxSize) {
+                    mEvictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cache shared by every BabushkaText in this process
+     */
+    public static SpanCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the shared span for an attribute, creating and caching it if needed.
+     *
+     * @param kind one of the {@link Composition} kinds
+     * @param value the value of the attribute, see {@link Composition#getRunValue(int)}
+     */
+    synchronized Object obtain(int kind, int value) {
+        mLookupKey.set(kind, value);
+        Object span = mSpans.get(mLookupKey);
+        if(span != null) {
+            mHitCount++;
+            return span;
+        }
+
+        mMissCount++;
+        span = newSpan(kind, value);
+        mSpans.put(new Key(kind, value), span);
+        return span;
+    }
+
+    /**
+     * Creates a span for an attribute without going through the cache.
+     */
+    static Object newSpan(int kind, int value) {
+        switch(kind) {
+            case Composition.SUBSCRIPT:
+                return new SubscriptSpan();
+            case Composition.SUPERSCRIPT:
+                return new SuperscriptSpan();
+            case Composition.STRIKE:
+                return new StrikethroughSpan();
+            case Composition.UNDERLINE:
+                return new UnderlineSpan();
+            case Composition.STYLE:
+                return new StyleSpan(value);
+            case Composition.ABSOLUTE_SIZE:
+                return new AbsoluteSizeSpan(value);
+            case Composition.RELATIVE_SIZE:
+                return new RelativeSizeSpan(Float.intBitsToFloat(value));
+            case Composition.TEXT_COLOR:
+                return new ForegroundColorSpan(value);
+            case Composition.BACKGROUND_COLOR:
+                return new BackgroundColorSpan(value);
+            default:
+                throw new IllegalArgumentException("Unknown span kind " + kind);
+        }
+    }
+
+    /**
+     * Sets the maximum number of cached spans, evicting the least recently used ones if needed.
+     *
+     * @param maxSize the maximum number of spans, must be positive
+     */
+    public synchronized void resize(int maxSize) {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+
+        Iterator<Key> keys = mSpans.keySet().iterator();
+        while(mSpans.size() > mMaxSize && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Drops every cached span.
+     */
+    public synchronized void evictAll() {
+        mEvictionCount += mSpans.size();
+        mSpans.clear();
+    }
+
+    /**
+     * @return the number of spans currently cached
+     */
+    public synchronized int size() {
+        return mSpans.size();
+    }
+
+    /**
+     * @return the maximum number of spans this cache holds
+     */
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the number of times a cached span was reused
+     */
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of times a span had to be created and cached
+     */
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the number of spans dropped to respect the maximum size
+     */
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int accesses = mHitCount + mMissCount;
+        int hitPercent = accesses != 0 ? (100 * mHitCount / accesses) : 0;
+        return "SpanCache[size=" + mSpans.size() + ",maxSize=" + mMaxSize + ",hits=" + mHitCount
+                + ",misses=" + mMissCount + ",evictions=" + mEvictionCount
+                + ",hitRate=" + hitPercent + "%]";
+    }
+
+    private static final class Key {
+
+        private int kind;
+        private int value;
+
+        Key(int kind, int value) {
+            set(kind, value);
+        }
+
+        void set(int kind, int value) {
+            this.kind = kind;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind == other.kind && value == other.value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * kind + value;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+/**
+ * A list of span runs, ordered by kind and then by the first Piece they cover. A run applies one
+ * styling attribute (one of the {@link Composition} kinds) with one value to a consecutive range
+ * of Pieces.
+ *
+ * The run data is kept in growable parallel arrays so the same plan can be refilled on every
+ * display() without allocating.
+ */
+final class SpanPlan {
+
+    private int size;
+    private int[] kinds = new int[16];
+    private int[] values = new int[16];
+    private int[] firstPieces = new int[16];
+    private int[] lastPieces = new int[16];
+    private Object[] spans = new Object[16];
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        for(int i = 0; i < size; i++) {
+            spans[i] = null;
+        }
+        size = 0;
+    }
+
+    void add(int kind, int value, int firstPiece, int lastPiece) {
+        if(size == kinds.length) {
+            grow();
+        }
+        kinds[size] = kind;
+        values[size] = value;
+        firstPieces[size] = firstPiece;
+        lastPieces[size] = lastPiece;
+        spans[size] = null;
+        size++;
+    }
+
+    int kindAt(int run) {
+        return kinds[run];
+    }
+
+    /**
+     * @see Composition#getRunValue(int)
+     */
+    int valueAt(int run) {
+        return values[run];
+    }
+
+    void setValueAt(int run, int value) {
+        values[run] = value;
+    }
+
+    int firstPieceAt(int run) {
+        return firstPieces[run];
+    }
+
+    int lastPieceAt(int run) {
+        return lastPieces[run];
+    }
+
+    Object spanAt(int run) {
+        return spans[run];
+    }
+
+    void setSpanAt(int run, Object span) {
+        spans[run] = span;
+    }
+
+    /**
+     * @return true if both runs apply the same value to the same Pieces
+     */
+    boolean sameRun(int run, SpanPlan other, int otherRun) {
+        return kinds[run] == other.kinds[otherRun]
+                && values[run] == other.values[otherRun]
+                && firstPieces[run] == other.firstPieces[otherRun]
+                && lastPieces[run] == other.lastPieces[otherRun];
+    }
+
+    /**
+     * Orders runs the same way they are planned: by kind, then by first Piece.
+     */
+    int compareRuns(int run, SpanPlan other, int otherRun) {
+        if(kinds[run] != other.kinds[otherRun]) {
+            return kinds[run] < other.kinds[otherRun] ? -1 : 1;
+        }
+        if(firstPieces[run] != other.firstPieces[otherRun]) {
+            return firstPieces[run] < other.firstPieces[otherRun] ? -1 : 1;
+        }
+        return 0;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        int[] newKinds = new int[capacity];
+        int[] newValues = new int[capacity];
+        int[] newFirstPieces = new int[capacity];
+        int[] newLastPieces = new int[capacity];
+        Object[] newSpans = new Object[capacity];
+        System.arraycopy(kinds, 0, newKinds, 0, size);
+        System.arraycopy(values, 0, newValues, 0, size);
+        System.arraycopy(firstPieces, 0, newFirstPieces, 0, size);
+        System.arraycopy(lastPieces, 0, newLastPieces, 0, size);
+        System.arraycopy(spans, 0, newSpans, 0, size);
+        kinds = newKinds;
+        values = newValues;
+        firstPieces = newFirstPieces;
+        lastPieces = newLastPieces;
+        spans = newSpans;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import java.util.List;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * Works out the smallest set of spans that styles a list of Pieces:
+ *
+ * - attributes equal to the defaults of the view (normal style, relative size 1, the view's own
+ *   text size and color) get no span at all.
+ * - consecutive Pieces sharing the value of an attribute get a single span for that attribute.
+ *
+ * Empty Pieces hold no text, so they neither get spans nor break a run.
+ */
+final class SpanPlanner {
+
+    // same as android.graphics.Typeface.NORMAL, which this plain Java class can't depend on
+    private static final int STYLE_NORMAL = 0;
+
+    // the absolute size of a Piece that never had one set, which follows the view's text size
+    static final int NO_TEXT_SIZE = Integer.MIN_VALUE;
+
+    private int defaultTextSize;
+    private int defaultTextColor;
+    private boolean hasDefaultTextColor;
+
+    // adapts the Piece lists planned, reused so that planning them doesn't allocate
+    private final PieceList mPieceList = new PieceList();
+
+    /**
+     * @param textSize the text size of the view, in pixels
+     * @param textColor the text color of the view
+     * @param hasTextColor false if the view's color depends on its state, in which case every
+     *                     Piece gets its own color span
+     * @return true if the defaults changed
+     */
+    boolean setDefaults(int textSize, int textColor, boolean hasTextColor) {
+        boolean changed = textSize != defaultTextSize || textColor != defaultTextColor
+                || hasTextColor != hasDefaultTextColor;
+        this.defaultTextSize = textSize;
+        this.defaultTextColor = textColor;
+        this.hasDefaultTextColor = hasTextColor;
+        return changed;
+    }
+
+    /**
+     * Fills the plan with the runs needed to style these Pieces.
+     */
+    void plan(List<Piece> pieces, SpanPlan plan) {
+        mPieceList.pieces = pieces;
+        plan(mPieceList, plan);
+        mPieceList.pieces = null;
+    }
+
+    /**
+     * Fills the plan with the runs needed to style Pieces, whatever holds them.
+     */
+    void plan(PieceAttributes pieces, SpanPlan plan) {
+        plan.clear();
+
+        int count = pieces.size();
+        for(int kind = 0; kind < Composition.KIND_COUNT; kind++) {
+            int runValue = 0;
+            int first = -1;
+            int last = -1;
+
+            for(int i = 0; i < count; i++) {
+                if(pieces.getTextLength(i) == 0) {
+                    continue;
+                }
+
+                int value = pieces.valueOf(i, kind);
+                if(first >= 0 && value == runValue) {
+                    last = i;
+                    continue;
+                }
+
+                if(first >= 0 && !isDefault(kind, runValue)) {
+                    plan.add(kind, runValue, first, last);
+                }
+                runValue = value;
+                first = i;
+                last = i;
+            }
+
+            if(first >= 0 && !isDefault(kind, runValue)) {
+                plan.add(kind, runValue, first, last);
+            }
+        }
+    }
+
+    /**
+     * @return the number of spans these Pieces get when each one is styled on its own, with
+     * every attribute spelled out.
+     */
+    static int countUnoptimizedSpans(List<Piece> pieces) {
+        int count = 0;
+        for(int i = 0; i < pieces.size(); i++) {
+            Piece aPiece = pieces.get(i);
+
+            // style, absolute size, relative size and text color are always applied
+            count += 4;
+            if(aPiece.isSubscript()) {
+                count++;
+            }
+            if(aPiece.isSuperscript()) {
+                count++;
+            }
+            if(aPiece.isStrike()) {
+                count++;
+            }
+            if(aPiece.isUnderline()) {
+                count++;
+            }
+            if(aPiece.getBackgroundColor() != -1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static int valueOf(Piece aPiece, int kind) {
+        switch(kind) {
+            case Composition.SUBSCRIPT:
+                return aPiece.isSubscript() ? 1 : 0;
+            case Composition.SUPERSCRIPT:
+                return aPiece.isSuperscript() ? 1 : 0;
+            case Composition.STRIKE:
+                return aPiece.isStrike() ? 1 : 0;
+            case Composition.UNDERLINE:
+                return aPiece.isUnderline() ? 1 : 0;
+            case Composition.STYLE:
+                return aPiece.getStyle();
+            case Composition.ABSOLUTE_SIZE:
+                return aPiece.getTextSize();
+            case Composition.RELATIVE_SIZE:
+                return Float.floatToIntBits(aPiece.getTextSizeRelative());
+            case Composition.TEXT_COLOR:
+                return aPiece.getTextColor();
+            case Composition.BACKGROUND_COLOR:
+                return aPiece.getBackgroundColor();
+            default:
+                throw new IllegalArgumentException("Unknown span kind " + kind);
+        }
+    }
+
+    boolean isDefault(int kind, int value) {
+        switch(kind) {
+            case Composition.SUBSCRIPT:
+            case Composition.SUPERSCRIPT:
+            case Composition.STRIKE:
+            case Composition.UNDERLINE:
+                return value == 0;
+            case Composition.STYLE:
+                return value == STYLE_NORMAL;
+            case Composition.ABSOLUTE_SIZE:
+                return value == defaultTextSize || value == NO_TEXT_SIZE;
+            case Composition.RELATIVE_SIZE:
+                return Float.intBitsToFloat(value) == 1f;
+            case Composition.TEXT_COLOR:
+                return hasDefaultTextColor && value == defaultTextColor;
+            case Composition.BACKGROUND_COLOR:
+                return value == -1;
+            default:
+                throw new IllegalArgumentException("Unknown span kind " + kind);
+        }
+    }
+
+    /**
+     * The attributes of a list of Piece objects.
+     */
+    private static final class PieceList implements PieceAttributes {
+
+        private List<Piece> pieces;
+
+        @Override
+        public int size() {
+            return pieces.size();
+        }
+
+        @Override
+        public int getTextLength(int location) {
+            return pieces.get(location).getText().length();
+        }
+
+        @Override
+        public int valueOf(int location, int kind) {
+            return SpanPlanner.valueOf(pieces.get(location), kind);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Turns a {@link Composition} into Android styled text, using the spans of the {@link SpanCache}.
+ */
+public final class SpannableAdapter {
+
+    private SpannableAdapter() {
+    }
+
+    /**
+     * @param composition the composed text
+     * @return a new Spannable with the text and spans of the composition
+     */
+    public static SpannableStringBuilder toSpannable(Composition composition) {
+        SpannableStringBuilder finalString = new SpannableStringBuilder(composition);
+        Set<Object> spansInUse = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+        for(int run = 0; run < composition.getRunCount(); run++) {
+            int kind = composition.getRunKind(run);
+            Object span = obtainSpan(kind, composition.getRunValue(run), spansInUse);
+            setSpan(finalString, span, kind, composition.getRunStart(run),
+                    composition.getRunEnd(run));
+        }
+        return finalString;
+    }
+
+    /**
+     * Gets the shared span for a run from the {@link SpanCache}, unless that instance already
+     * styles another range of the same text, in which case the run gets a span of its own.
+     *
+     * @param spansInUse the spans already applied to the text, updated by this call
+     */
+    static Object obtainSpan(int kind, int value, Set<Object> spansInUse) {
+        Object span = SpanCache.getInstance().obtain(kind, value);
+        if(!spansInUse.add(span)) {
+            span = SpanCache.newSpan(kind, value);
+            spansInUse.add(span);
+        }
+        return span;
+    }
+
+    /**
+     * Applies the span of a run to a range of the text.
+     */
+    static void setSpan(Spannable finalString, Object span, int kind, int start, int end) {
+        // priorities keep spans in the order of their kind no matter when they were added, so
+        // sizes and baseline shifts always combine the same way
+        int priority = (Composition.KIND_COUNT - kind) << Spanned.SPAN_PRIORITY_SHIFT;
+        finalString.setSpan(span, start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE | priority);
+    }
+}
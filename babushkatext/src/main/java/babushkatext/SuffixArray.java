@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext;
+
+/**
+ * The suffixes of a text in sorted order, to find every occurrence of a pattern in
+ * O(m log n + k) for a pattern of length m with k occurrences, no matter how long the text is.
+ *
+ * Building it sorts the suffixes by prefix doubling, ranking them by their first 1, 2, 4... chars
+ * with counting sorts, in O(n log n) time and about 16 bytes per char. The chars are first ranked
+ * among the distinct ones of the text, so the counts take as many ints as the text has chars
+ * rather than one per possible char.
+ */
+final class SuffixArray {
+
+    private final char[] mText;
+    private final int[] mSuffixes;
+
+    /**
+     * @param text the text to index, which must not change afterwards
+     */
+    SuffixArray(char[] text) {
+        mText = text;
+        mSuffixes = sort(text);
+    }
+
+    /**
+     * Finds where a pattern occurs, in no particular order.
+     *
+     * @param pattern the pattern, not empty
+     * @param out where to write the start of each occurrence, or null to only count them
+     * @return the number of occurrences, which are written to out if it's large enough
+     */
+    int find(CharSequence pattern, int[] out) {
+        int first = lowerBound(pattern, false);
+        int last = lowerBound(pattern, true);
+        int count = last - first;
+        if(out != null && out.length >= count) {
+            System.arraycopy(mSuffixes, first, out, 0, count);
+        }
+        return count;
+    }
+
+    /**
+     * @param prefixIsLess false for the first suffix not less than the pattern, true for the first
+     *                     one which is greater and doesn't start with it
+     */
+    private int lowerBound(CharSequence pattern, boolean prefixIsLess) {
+        int low = 0;
+        int high = mSuffixes.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(mSuffixes[middle], pattern);
+            if(comparison < 0 || (prefixIsLess && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return less than 0 if the suffix sorts before the pattern, 0 if it starts with it
+     */
+    private int compare(int suffix, CharSequence pattern) {
+        int length = Math.min(mText.length - suffix, pattern.length());
+        for(int i = 0; i < length; i++) {
+            int difference = mText[suffix + i] - pattern.charAt(i);
+            if(difference != 0) {
+                return difference;
+            }
+        }
+        return length == pattern.length() ? 0 : -1;
+    }
+
+    private static int[] sort(char[] text) {
+        int n = text.length;
+        int[] suffixes = new int[n];
+        int[] ranks = new int[n];
+        int[] scratch = new int[n];
+        if(n == 0) {
+            return suffixes;
+        }
+
+        // by first char, ranked among the distinct chars of the text
+        int rankCount = rankChars(text, ranks);
+        int[] counts = new int[n + 1];
+        for(int i = 0; i < n; i++) {
+            counts[ranks[i]]++;
+        }
+        accumulate(counts, rankCount);
+        for(int i = n - 1; i >= 0; i--) {
+            suffixes[--counts[ranks[i]]] = i;
+        }
+
+        for(int k = 1; ; k <<= 1) {
+            // by the rank k chars further, suffixes shorter than that first
+            int p = 0;
+            for(int i = n - k; i < n; i++) {
+                scratch[p++] = i;
+            }
+            for(int j = 0; j < n; j++) {
+                if(suffixes[j] >= k) {
+                    scratch[p++] = suffixes[j] - k;
+                }
+            }
+
+            // then, stably, by their own rank
+            for(int i = 0; i < rankCount; i++) {
+                counts[i] = 0;
+            }
+            for(int i = 0; i < n; i++) {
+                counts[ranks[i]]++;
+            }
+            accumulate(counts, rankCount);
+            for(int j = n - 1; j >= 0; j--) {
+                suffixes[--counts[ranks[scratch[j]]]] = scratch[j];
+            }
+
+            // rank by the first 2k chars
+            scratch[suffixes[0]] = 0;
+            rankCount = 1;
+            for(int j = 1; j < n; j++) {
+                int a = suffixes[j - 1];
+                int b = suffixes[j];
+                boolean same = ranks[a] == ranks[b]
+                        && (a + k < n ? ranks[a + k] : -1) == (b + k < n ? ranks[b + k] : -1);
+                scratch[b] = same ? rankCount - 1 : rankCount++;
+            }
+            int[] swap = ranks;
+            ranks = scratch;
+            scratch = swap;
+            if(rankCount == n) {
+                return suffixes;
+            }
+        }
+    }
+
+    /**
+     * Ranks each char of a text among the distinct chars it holds, in char order, with a bit set
+     * of the chars present and the number of them before each word of it: 12 KiB at most.
+     *
+     * @return the number of distinct chars
+     */
+    private static int rankChars(char[] text, int[] ranks) {
+        long[] present = new long[(Character.MAX_VALUE + 1) >> 6];
+        for(char c : text) {
+            present[c >> 6] |= 1L << c;
+        }
+        int[] before = new int[present.length];
+        int distinct = 0;
+        for(int word = 0; word < present.length; word++) {
+            before[word] = distinct;
+            distinct += Long.bitCount(present[word]);
+        }
+        for(int i = 0; i < text.length; i++) {
+            char c = text[i];
+            ranks[i] = before[c >> 6] + Long.bitCount(present[c >> 6] & ((1L << c) - 1));
+        }
+        return distinct;
+    }
+
+    /**
+     * Turns counts into the end of each rank in the sorted order.
+     */
+    private static void accumulate(int[] counts, int rankCount) {
+        for(int i = 1; i < rankCount; i++) {
+            counts[i] += counts[i - 1];
+        }
+    }
+}
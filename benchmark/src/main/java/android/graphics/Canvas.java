@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.graphics;
+
+/**
+ * Stand-in for the Android class of the same name. Drawing calls are only counted.
+ */
+public class Canvas {
+
+    private int mDrawCount;
+
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        mDrawCount++;
+    }
+
+    public void drawText(CharSequence text, int start, int end, float x, float y, Paint paint) {
+        mDrawCount++;
+    }
+
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        mDrawCount++;
+    }
+
+    public int getDrawCount() {
+        return mDrawCount;
+    }
+}
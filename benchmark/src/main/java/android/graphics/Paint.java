@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.graphics;
+
+/**
+ * Stand-in for the Android class of the same name. Every character measures half the text size,
+ * slightly more in bold.
+ */
+public class Paint {
+
+    public static final int ANTI_ALIAS_FLAG = 1;
+
+    private float mTextSize = 42;
+    private int mColor = Color.BLACK;
+    private boolean mFakeBoldText;
+    private Typeface mTypeface;
+    private float mTextSkewX;
+    private boolean mUnderlineText;
+    private boolean mStrikeThruText;
+    private int mFlags;
+    private float mTextScaleX = 1;
+
+    public Paint() {
+    }
+
+    public Paint(int flags) {
+        mFlags = flags;
+    }
+
+    public void set(Paint src) {
+        mTextSize = src.mTextSize;
+        mColor = src.mColor;
+        mFakeBoldText = src.mFakeBoldText;
+        mTypeface = src.mTypeface;
+        mTextSkewX = src.mTextSkewX;
+        mUnderlineText = src.mUnderlineText;
+        mStrikeThruText = src.mStrikeThruText;
+        mFlags = src.mFlags;
+        mTextScaleX = src.mTextScaleX;
+    }
+
+    public int getFlags() {
+        return mFlags;
+    }
+
+    public void setFlags(int flags) {
+        mFlags = flags;
+    }
+
+    public float getTextScaleX() {
+        return mTextScaleX;
+    }
+
+    public void setTextScaleX(float scaleX) {
+        mTextScaleX = scaleX;
+    }
+
+    public float getTextSize() {
+        return mTextSize;
+    }
+
+    public void setTextSize(float textSize) {
+        mTextSize = textSize;
+    }
+
+    public int getColor() {
+        return mColor;
+    }
+
+    public void setColor(int color) {
+        mColor = color;
+    }
+
+    public boolean isFakeBoldText() {
+        return mFakeBoldText;
+    }
+
+    public void setFakeBoldText(boolean fakeBoldText) {
+        mFakeBoldText = fakeBoldText;
+    }
+
+    public Typeface getTypeface() {
+        return mTypeface;
+    }
+
+    public Typeface setTypeface(Typeface typeface) {
+        mTypeface = typeface;
+        return typeface;
+    }
+
+    public float getTextSkewX() {
+        return mTextSkewX;
+    }
+
+    public void setTextSkewX(float skewX) {
+        mTextSkewX = skewX;
+    }
+
+    public boolean isUnderlineText() {
+        return mUnderlineText;
+    }
+
+    public void setUnderlineText(boolean underlineText) {
+        mUnderlineText = underlineText;
+    }
+
+    public boolean isStrikeThruText() {
+        return mStrikeThruText;
+    }
+
+    public void setStrikeThruText(boolean strikeThruText) {
+        mStrikeThruText = strikeThruText;
+    }
+
+    public float ascent() {
+        return -0.9f * mTextSize;
+    }
+
+    public float descent() {
+        return 0.25f * mTextSize;
+    }
+
+    public float measureText(CharSequence text, int start, int end) {
+        return (end - start) * mTextSize * (mFakeBoldText ? 0.55f : 0.5f);
+    }
+
+    public float measureText(char[] text, int index, int count) {
+        return count * mTextSize * (mFakeBoldText ? 0.55f : 0.5f);
+    }
+
+    public float measureText(String text) {
+        return measureText(text, 0, text.length());
+    }
+}
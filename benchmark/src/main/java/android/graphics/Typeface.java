@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.graphics;
+
+/**
+ * Stand-in for the Android class of the same name, so the library runs on a desktop JVM.
+ */
+public class Typeface {
+
+    public static final int NORMAL = 0;
+    public static final int BOLD = 1;
+    public static final int ITALIC = 2;
+    public static final int BOLD_ITALIC = 3;
+
+    public static final Typeface DEFAULT = new Typeface(NORMAL);
+
+    private final int mStyle;
+
+    private Typeface(int style) {
+        mStyle = style;
+    }
+
+    public static Typeface defaultFromStyle(int style) {
+        // like a font without bold nor italic faces, which then get faked
+        return DEFAULT;
+    }
+
+    public int getStyle() {
+        return mStyle;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the Android class of the same name. Posted callbacks wait for
+ * {@link #runPendingCallbacks()}, whatever their delay.
+ */
+public class Handler {
+
+    private final List<Runnable> mCallbacks = new ArrayList<>();
+
+    public Handler() {
+    }
+
+    public Handler(Looper looper) {
+    }
+
+    public final synchronized boolean post(Runnable r) {
+        mCallbacks.add(r);
+        return true;
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis) {
+        return post(r);
+    }
+
+    public final synchronized void removeCallbacks(Runnable r) {
+        while(mCallbacks.remove(r)) {
+            // remove every occurrence
+        }
+    }
+
+    /**
+     * Runs the callbacks posted so far, as the looper would.
+     */
+    public void runPendingCallbacks() {
+        List<Runnable> callbacks;
+        synchronized(this) {
+            callbacks = new ArrayList<>(mCallbacks);
+            mCallbacks.clear();
+        }
+        for(Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the Android class of the same name. Values are kept as objects, in the order they
+ * are written, and Parcelables are recreated through their CREATOR as on Android.
+ */
+public final class Parcel {
+
+    private final List<Object> mValues = new ArrayList<>();
+    private int mPosition;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        mValues.clear();
+        mPosition = 0;
+    }
+
+    public void setDataPosition(int pos) {
+        mPosition = pos;
+    }
+
+    public void writeByteArray(byte[] b) {
+        mValues.add(b != null ? b.clone() : null);
+    }
+
+    public byte[] createByteArray() {
+        return (byte[]) mValues.get(mPosition++);
+    }
+
+    public void writeParcelable(Parcelable p, int parcelableFlags) {
+        if(p == null) {
+            mValues.add(null);
+            return;
+        }
+        mValues.add(p.getClass());
+        p.writeToParcel(this, parcelableFlags);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> T readParcelable(ClassLoader loader) {
+        Class<?> type = (Class<?>) mValues.get(mPosition++);
+        if(type == null) {
+            return null;
+        }
+        try {
+            Parcelable.Creator<?> creator = (Parcelable.Creator<?>) type.getField("CREATOR")
+                    .get(null);
+            return (T) creator.createFromParcel(this);
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("Parcelable without a CREATOR: " + type, e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.os;
+
+/**
+ * Stand-in for the Android class of the same name. Sections are only counted.
+ */
+public final class Trace {
+
+    private static int sDepth;
+
+    private Trace() {
+    }
+
+    public static void beginSection(String sectionName) {
+        sDepth++;
+    }
+
+    public static void endSection() {
+        sDepth--;
+    }
+
+    /**
+     * @return the number of sections begun and not ended yet
+     */
+    public static int getDepth() {
+        return sDepth;
+    }
+}
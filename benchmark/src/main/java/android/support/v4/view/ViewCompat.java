@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.support.v4.view;
+
+import android.view.View;
+
+/**
+ * Stand-in for the support library class of the same name, so the library runs on a desktop JVM.
+ */
+public class ViewCompat {
+
+    public static void postOnAnimation(View view, Runnable action) {
+        view.post(action);
+    }
+
+    public static void postOnAnimationDelayed(View view, Runnable action, long delayMillis) {
+        view.postDelayed(action, delayMillis);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.text;
+
+/**
+ * Stand-in for the Android interface of the same name, so the library runs on a desktop JVM.
+ */
+public interface Editable extends CharSequence, GetChars, Spannable, Appendable {
+
+    Editable replace(int st, int en, CharSequence source, int start, int end);
+
+    Editable replace(int st, int en, CharSequence text);
+
+    Editable insert(int where, CharSequence text);
+
+    Editable delete(int st, int en);
+
+    Editable append(CharSequence text);
+
+    Editable append(CharSequence text, int start, int end);
+
+    Editable append(char text);
+
+    void clear();
+
+    void clearSpans();
+
+    class Factory {
+
+        private static final Factory INSTANCE = new Factory();
+
+        public static Factory getInstance() {
+            return INSTANCE;
+        }
+
+        public Editable newEditable(CharSequence source) {
+            return new SpannableStringBuilder(source);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.text;
+
+/**
+ * Stand-in for the Android class of the same name, so the library runs on a desktop JVM.
+ */
+public abstract class Layout {
+
+    public enum Alignment {
+        ALIGN_NORMAL,
+        ALIGN_OPPOSITE,
+        ALIGN_CENTER
+    }
+
+    private final CharSequence mText;
+    private final TextPaint mPaint;
+    private final int mWidth;
+
+    protected Layout(CharSequence text, TextPaint paint, int width) {
+        mText = text;
+        mPaint = paint;
+        mWidth = width;
+    }
+
+    public final CharSequence getText() {
+        return mText;
+    }
+
+    public final TextPaint getPaint() {
+        return mPaint;
+    }
+
+    public final int getWidth() {
+        return mWidth;
+    }
+
+    public abstract int getLineCount();
+
+    public abstract int getLineForOffset(int offset);
+
+    public abstract int getLineTop(int line);
+
+    public int getHeight() {
+        return getLineTop(getLineCount());
+    }
+}
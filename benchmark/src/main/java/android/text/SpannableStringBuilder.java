@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.text;
+
+import java.lang.reflect.Array;
+
+/**
+ * Stand-in for the Android class of the same name. It stores the text in a growable char array
+ * and the spans in parallel arrays, and moves spans on edits following their point/mark flags,
+ * so the cost of edits and span updates is of the same order as on a device.
+ */
+public class SpannableStringBuilder implements CharSequence, GetChars, Spannable, Editable,
+        Appendable {
+
+    private char[] mText;
+    private int mLength;
+
+    private Object[] mSpans = new Object[8];
+    private int[] mSpanStarts = new int[8];
+    private int[] mSpanEnds = new int[8];
+    private int[] mSpanFlags = new int[8];
+    private int mSpanCount;
+
+    public SpannableStringBuilder() {
+        this("");
+    }
+
+    public SpannableStringBuilder(CharSequence text) {
+        mText = new char[Math.max(16, text.length())];
+        replace(0, 0, text, 0, text.length());
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int where) {
+        if(where < 0 || where >= mLength) {
+            throw new IndexOutOfBoundsException("charAt: " + where);
+        }
+        return mText[where];
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destoff) {
+        System.arraycopy(mText, start, dest, destoff, end - start);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(mText, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(mText, 0, mLength);
+    }
+
+    @Override
+    public SpannableStringBuilder replace(int st, int en, CharSequence tb, int start, int end) {
+        int insertLength = end - start;
+        int newLength = mLength - (en - st) + insertLength;
+        if(newLength > mText.length) {
+            char[] text = new char[Math.max(newLength, mText.length * 2)];
+            System.arraycopy(mText, 0, text, 0, mLength);
+            mText = text;
+        }
+        System.arraycopy(mText, en, mText, st + insertLength, mLength - en);
+        TextUtils.getChars(tb, start, end, mText, st);
+        mLength = newLength;
+
+        for(int i = mSpanCount - 1; i >= 0; i--) {
+            mSpanStarts[i] = moveOffset(mSpanStarts[i], st, en, insertLength,
+                    (mSpanFlags[i] & 0xF0) >> 4);
+            mSpanEnds[i] = moveOffset(mSpanEnds[i], st, en, insertLength, mSpanFlags[i] & 0x0F);
+            if(mSpanStarts[i] == mSpanEnds[i] && (mSpanFlags[i] & SPAN_POINT_MARK_MASK)
+                    == SPAN_EXCLUSIVE_EXCLUSIVE) {
+                removeSpanAt(i);
+            }
+        }
+
+        if(tb instanceof Spanned) {
+            Spanned spanned = (Spanned) tb;
+            Object[] spans = spanned.getSpans(start, end, Object.class);
+            for(Object span : spans) {
+                int spanStart = Math.max(spanned.getSpanStart(span), start) - start + st;
+                int spanEnd = Math.min(spanned.getSpanEnd(span), end) - start + st;
+                if(spanStart < spanEnd) {
+                    setSpan(span, spanStart, spanEnd, spanned.getSpanFlags(span));
+                }
+            }
+        }
+        return this;
+    }
+
+    // 1 is a mark, which stays before text inserted at it, 2 a point, which moves after it
+    private static int moveOffset(int offset, int st, int en, int insertLength, int type) {
+        if(offset < st) {
+            return offset;
+        }
+        if(offset > en || (offset == en && en > st)) {
+            return offset - (en - st) + insertLength;
+        }
+        if(offset == st && st == en && type == 2) {
+            return st + insertLength;
+        }
+        return st;
+    }
+
+    @Override
+    public SpannableStringBuilder replace(int st, int en, CharSequence text) {
+        return replace(st, en, text, 0, text.length());
+    }
+
+    @Override
+    public SpannableStringBuilder insert(int where, CharSequence text) {
+        return replace(where, where, text, 0, text.length());
+    }
+
+    @Override
+    public SpannableStringBuilder delete(int st, int en) {
+        return replace(st, en, "", 0, 0);
+    }
+
+    @Override
+    public SpannableStringBuilder append(CharSequence text) {
+        return replace(mLength, mLength, text, 0, text.length());
+    }
+
+    @Override
+    public SpannableStringBuilder append(CharSequence text, int start, int end) {
+        return replace(mLength, mLength, text, start, end);
+    }
+
+    @Override
+    public SpannableStringBuilder append(char text) {
+        return append(String.valueOf(text));
+    }
+
+    @Override
+    public void clear() {
+        replace(0, mLength, "", 0, 0);
+    }
+
+    @Override
+    public void clearSpans() {
+        for(int i = 0; i < mSpanCount; i++) {
+            mSpans[i] = null;
+        }
+        mSpanCount = 0;
+    }
+
+    @Override
+    public void setSpan(Object what, int start, int end, int flags) {
+        if(start > end || start < 0 || end > mLength) {
+            throw new IndexOutOfBoundsException("setSpan (" + start + " ... " + end
+                    + ") ending beyond length " + mLength);
+        }
+        if(start == end && (flags & SPAN_POINT_MARK_MASK) == SPAN_EXCLUSIVE_EXCLUSIVE) {
+            throw new IllegalArgumentException(
+                    "SPAN_EXCLUSIVE_EXCLUSIVE spans cannot have a zero length");
+        }
+
+        int index = indexOf(what);
+        if(index < 0) {
+            if(mSpanCount == mSpans.length) {
+                growSpans();
+            }
+            index = mSpanCount++;
+            mSpans[index] = what;
+        }
+        mSpanStarts[index] = start;
+        mSpanEnds[index] = end;
+        mSpanFlags[index] = flags;
+    }
+
+    @Override
+    public void removeSpan(Object what) {
+        int index = indexOf(what);
+        if(index >= 0) {
+            removeSpanAt(index);
+        }
+    }
+
+    @Override
+    public int getSpanStart(Object what) {
+        int index = indexOf(what);
+        return index >= 0 ? mSpanStarts[index] : -1;
+    }
+
+    @Override
+    public int getSpanEnd(Object what) {
+        int index = indexOf(what);
+        return index >= 0 ? mSpanEnds[index] : -1;
+    }
+
+    @Override
+    public int getSpanFlags(Object what) {
+        int index = indexOf(what);
+        return index >= 0 ? mSpanFlags[index] : 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] getSpans(int queryStart, int queryEnd, Class<T> kind) {
+        int count = 0;
+        for(int i = 0; i < mSpanCount; i++) {
+            if(matches(i, queryStart, queryEnd, kind)) {
+                count++;
+            }
+        }
+
+        T[] result = (T[]) Array.newInstance(kind, count);
+        int next = 0;
+        for(int i = 0; i < mSpanCount; i++) {
+            if(matches(i, queryStart, queryEnd, kind)) {
+                result[next++] = (T) mSpans[i];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int nextSpanTransition(int start, int limit, Class kind) {
+        for(int i = 0; i < mSpanCount; i++) {
+            if(kind != null && !kind.isInstance(mSpans[i])) {
+                continue;
+            }
+            if(mSpanStarts[i] > start && mSpanStarts[i] < limit) {
+                limit = mSpanStarts[i];
+            }
+            if(mSpanEnds[i] > start && mSpanEnds[i] < limit) {
+                limit = mSpanEnds[i];
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @return the number of spans attached to this text
+     */
+    public int getSpanCount() {
+        return mSpanCount;
+    }
+
+    private boolean matches(int index, int queryStart, int queryEnd, Class<?> kind) {
+        return kind.isInstance(mSpans[index]) && mSpanStarts[index] <= queryEnd
+                && mSpanEnds[index] >= queryStart;
+    }
+
+    private int indexOf(Object what) {
+        for(int i = 0; i < mSpanCount; i++) {
+            if(mSpans[i] == what) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeSpanAt(int index) {
+        int moved = mSpanCount - index - 1;
+        System.arraycopy(mSpans, index + 1, mSpans, index, moved);
+        System.arraycopy(mSpanStarts, index + 1, mSpanStarts, index, moved);
+        System.arraycopy(mSpanEnds, index + 1, mSpanEnds, index, moved);
+        System.arraycopy(mSpanFlags, index + 1, mSpanFlags, index, moved);
+        mSpans[--mSpanCount] = null;
+    }
+
+    private void growSpans() {
+        int capacity = mSpans.length * 2;
+        Object[] spans = new Object[capacity];
+        int[] starts = new int[capacity];
+        int[] ends = new int[capacity];
+        int[] flags = new int[capacity];
+        System.arraycopy(mSpans, 0, spans, 0, mSpanCount);
+        System.arraycopy(mSpanStarts, 0, starts, 0, mSpanCount);
+        System.arraycopy(mSpanEnds, 0, ends, 0, mSpanCount);
+        System.arraycopy(mSpanFlags, 0, flags, 0, mSpanCount);
+        mSpans = spans;
+        mSpanStarts = starts;
+        mSpanEnds = ends;
+        mSpanFlags = flags;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.text;
+
+/**
+ * Stand-in for the Android interface of the same name, so the library runs on a desktop JVM.
+ */
+public interface Spanned extends CharSequence {
+
+    int SPAN_POINT_MARK_MASK = 0x33;
+    int SPAN_MARK_MARK = 0x11;
+    int SPAN_MARK_POINT = 0x12;
+    int SPAN_POINT_MARK = 0x21;
+    int SPAN_POINT_POINT = 0x22;
+    int SPAN_INCLUSIVE_EXCLUSIVE = SPAN_MARK_MARK;
+    int SPAN_INCLUSIVE_INCLUSIVE = SPAN_MARK_POINT;
+    int SPAN_EXCLUSIVE_EXCLUSIVE = SPAN_POINT_MARK;
+    int SPAN_EXCLUSIVE_INCLUSIVE = SPAN_POINT_POINT;
+    int SPAN_PRIORITY_SHIFT = 16;
+    int SPAN_PRIORITY = 0xFF << SPAN_PRIORITY_SHIFT;
+
+    <T> T[] getSpans(int start, int end, Class<T> type);
+
+    int getSpanStart(Object tag);
+
+    int getSpanEnd(Object tag);
+
+    int getSpanFlags(Object tag);
+
+    int nextSpanTransition(int start, int limit, Class type);
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.text;
+
+/**
+ * Stand-in for the Android class of the same name. Lines only break after newlines, each one a
+ * little taller than the text size. The text is read on every call, so the layout follows edits
+ * of a mutable text like a DynamicLayout would.
+ */
+public class StaticLayout extends Layout {
+
+    public StaticLayout(CharSequence source, TextPaint paint, int width, Alignment align,
+            float spacingmult, float spacingadd, boolean includepad) {
+        super(source, paint, width);
+    }
+
+    @Override
+    public int getLineCount() {
+        return getLineForOffset(getText().length()) + 1;
+    }
+
+    @Override
+    public int getLineForOffset(int offset) {
+        CharSequence text = getText();
+        int line = 0;
+        for(int i = 0; i < offset && i < text.length(); i++) {
+            if(text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    @Override
+    public int getLineTop(int line) {
+        return line * (int) (getPaint().getTextSize() * 1.2f);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.text;
+
+/**
+ * Stand-in for the Android class of the same name, so the library runs on a desktop JVM.
+ */
+public class TextUtils {
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+
+    public static boolean equals(CharSequence a, CharSequence b) {
+        if(a == b) {
+            return true;
+        }
+        if(a == null || b == null || a.length() != b.length()) {
+            return false;
+        }
+        return regionMatches(a, 0, b, 0, a.length());
+    }
+
+    public static boolean regionMatches(CharSequence one, int toffset, CharSequence two,
+                                        int ooffset, int len) {
+        for(int i = 0; i < len; i++) {
+            if(one.charAt(toffset + i) != two.charAt(ooffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void getChars(CharSequence s, int start, int end, char[] dest, int destoff) {
+        if(s instanceof String) {
+            ((String) s).getChars(start, end, dest, destoff);
+        } else if(s instanceof GetChars) {
+            ((GetChars) s).getChars(start, end, dest, destoff);
+        } else {
+            for(int i = start; i < end; i++) {
+                dest[destoff++] = s.charAt(i);
+            }
+        }
+    }
+}
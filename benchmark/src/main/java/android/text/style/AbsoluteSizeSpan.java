@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.text.style;
+
+import android.text.TextPaint;
+
+/**
+ * Stand-in for the Android class of the same name, so the library runs on a desktop JVM.
+ */
+public class AbsoluteSizeSpan extends MetricAffectingSpan {
+
+    private final int mValue;
+
+    public AbsoluteSizeSpan(int value) {
+        mValue = value;
+    }
+
+    public int getSize() {
+        return mValue;
+    }
+
+    @Override
+    public void updateMeasureState(TextPaint p) {
+        p.setTextSize(mValue);
+    }
+}
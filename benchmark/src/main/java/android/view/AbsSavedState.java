@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.view;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Stand-in for the Android class of the same name, so the library runs on a desktop JVM.
+ */
+public abstract class AbsSavedState implements Parcelable {
+
+    public static final AbsSavedState EMPTY_STATE = new AbsSavedState() {
+    };
+
+    public static final Parcelable.Creator<AbsSavedState> CREATOR
+            = new Parcelable.Creator<AbsSavedState>() {
+        @Override
+        public AbsSavedState createFromParcel(Parcel in) {
+            Parcelable superState = in.readParcelable(null);
+            if(superState != null) {
+                throw new IllegalStateException("superState must be null");
+            }
+            return EMPTY_STATE;
+        }
+
+        @Override
+        public AbsSavedState[] newArray(int size) {
+            return new AbsSavedState[size];
+        }
+    };
+
+    private final Parcelable mSuperState;
+
+    private AbsSavedState() {
+        mSuperState = null;
+    }
+
+    protected AbsSavedState(Parcelable superState) {
+        if(superState == null) {
+            throw new IllegalArgumentException("superState must not be null");
+        }
+        mSuperState = superState != EMPTY_STATE ? superState : null;
+    }
+
+    protected AbsSavedState(Parcel source) {
+        Parcelable superState = source.readParcelable(null);
+        mSuperState = superState != null ? superState : EMPTY_STATE;
+    }
+
+    public final Parcelable getSuperState() {
+        return mSuperState;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeParcelable(mSuperState, flags);
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.view;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the Android class of the same name. Layout and drawing requests are only counted,
+ * and posted callbacks wait for {@link #runPendingCallbacks()}.
+ */
+public class View {
+
+    private final Context mContext;
+    private int mLayoutRequests;
+    private int mInvalidations;
+    private final List<Runnable> mCallbacks = new ArrayList<>();
+    private int mWidth;
+    private int mHeight;
+    private int mScrollX;
+    private int mScrollY;
+    private int mPaddingLeft;
+    private int mPaddingTop;
+    private int mPaddingRight;
+    private int mPaddingBottom;
+    private int mMeasuredWidth;
+    private int mMeasuredHeight;
+
+    public View(Context context) {
+        mContext = context;
+    }
+
+    public View(Context context, AttributeSet attrs) {
+        this(context);
+    }
+
+    public View(Context context, AttributeSet attrs, int defStyleAttr) {
+        this(context);
+    }
+
+    public Context getContext() {
+        return mContext;
+    }
+
+    public Resources getResources() {
+        return mContext.getResources();
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Sets the width returned by {@link #getWidth()}, as a layout pass would.
+     */
+    public void setWidth(int width) {
+        mWidth = width;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Sets the height returned by {@link #getHeight()}, as a layout pass would.
+     */
+    public void setHeight(int height) {
+        mHeight = height;
+    }
+
+    public int getScrollX() {
+        return mScrollX;
+    }
+
+    public int getScrollY() {
+        return mScrollY;
+    }
+
+    public void scrollTo(int x, int y) {
+        if(x != mScrollX || y != mScrollY) {
+            int oldX = mScrollX;
+            int oldY = mScrollY;
+            mScrollX = x;
+            mScrollY = y;
+            onScrollChanged(x, y, oldX, oldY);
+        }
+    }
+
+    public void scrollBy(int x, int y) {
+        scrollTo(mScrollX + x, mScrollY + y);
+    }
+
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+    }
+
+    public void setPadding(int left, int top, int right, int bottom) {
+        mPaddingLeft = left;
+        mPaddingTop = top;
+        mPaddingRight = right;
+        mPaddingBottom = bottom;
+    }
+
+    public int getPaddingLeft() {
+        return mPaddingLeft;
+    }
+
+    public int getPaddingTop() {
+        return mPaddingTop;
+    }
+
+    public int getPaddingRight() {
+        return mPaddingRight;
+    }
+
+    public int getPaddingBottom() {
+        return mPaddingBottom;
+    }
+
+    /**
+     * Measures the view, then sizes it as a layout pass would.
+     */
+    public final void measure(int widthMeasureSpec, int heightMeasureSpec) {
+        onMeasure(widthMeasureSpec, heightMeasureSpec);
+        mWidth = mMeasuredWidth;
+        mHeight = mMeasuredHeight;
+    }
+
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec),
+                MeasureSpec.getSize(heightMeasureSpec));
+    }
+
+    protected final void setMeasuredDimension(int measuredWidth, int measuredHeight) {
+        mMeasuredWidth = measuredWidth;
+        mMeasuredHeight = measuredHeight;
+    }
+
+    public final int getMeasuredWidth() {
+        return mMeasuredWidth;
+    }
+
+    public final int getMeasuredHeight() {
+        return mMeasuredHeight;
+    }
+
+    public static int resolveSize(int size, int measureSpec) {
+        int specSize = MeasureSpec.getSize(measureSpec);
+        switch(MeasureSpec.getMode(measureSpec)) {
+            case MeasureSpec.AT_MOST:
+                return Math.min(size, specSize);
+            case MeasureSpec.EXACTLY:
+                return specSize;
+            default:
+                return size;
+        }
+    }
+
+    public void draw(Canvas canvas) {
+        onDraw(canvas);
+    }
+
+    protected void onDraw(Canvas canvas) {
+    }
+
+    public Parcelable onSaveInstanceState() {
+        return AbsSavedState.EMPTY_STATE;
+    }
+
+    public void onRestoreInstanceState(Parcelable state) {
+        if(state != null && !(state instanceof AbsSavedState)) {
+            throw new IllegalArgumentException("Wrong state class, expecting View State but "
+                    + "received " + state.getClass().toString() + " instead.");
+        }
+    }
+
+    public void requestLayout() {
+        mLayoutRequests++;
+    }
+
+    public void invalidate() {
+        mInvalidations++;
+    }
+
+    public boolean post(Runnable action) {
+        mCallbacks.add(action);
+        return true;
+    }
+
+    public boolean postDelayed(Runnable action, long delayMillis) {
+        return post(action);
+    }
+
+    public boolean removeCallbacks(Runnable action) {
+        while(mCallbacks.remove(action)) {
+            // remove every occurrence
+        }
+        return true;
+    }
+
+    protected void onAttachedToWindow() {
+    }
+
+    protected void onDetachedFromWindow() {
+    }
+
+    /**
+     * Attaches this view to a window, as adding it to a shown hierarchy would.
+     */
+    public void attachToWindow() {
+        onAttachedToWindow();
+    }
+
+    /**
+     * Detaches this view from its window, as removing it from its hierarchy would.
+     */
+    public void detachFromWindow() {
+        onDetachedFromWindow();
+    }
+
+    /**
+     * Runs the callbacks posted so far, as the next frame would.
+     */
+    public void runPendingCallbacks() {
+        List<Runnable> callbacks = new ArrayList<>(mCallbacks);
+        mCallbacks.clear();
+        for(Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    public int getLayoutRequestCount() {
+        return mLayoutRequests;
+    }
+
+    public int getInvalidationCount() {
+        return mInvalidations;
+    }
+
+    public static class BaseSavedState extends AbsSavedState {
+
+        public BaseSavedState(Parcel source) {
+            super(source);
+        }
+
+        public BaseSavedState(Parcelable superState) {
+            super(superState);
+        }
+    }
+
+    public static class MeasureSpec {
+
+        private static final int MODE_SHIFT = 30;
+        private static final int MODE_MASK = 0x3 << MODE_SHIFT;
+
+        public static final int UNSPECIFIED = 0;
+        public static final int EXACTLY = 1 << MODE_SHIFT;
+        public static final int AT_MOST = 2 << MODE_SHIFT;
+
+        public static int makeMeasureSpec(int size, int mode) {
+            return (size & ~MODE_MASK) | (mode & MODE_MASK);
+        }
+
+        public static int getMode(int measureSpec) {
+            return measureSpec & MODE_MASK;
+        }
+
+        public static int getSize(int measureSpec) {
+            return measureSpec & ~MODE_MASK;
+        }
+    }
+}
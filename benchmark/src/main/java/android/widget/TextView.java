@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package android.widget;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.text.Editable;
+import android.text.Layout;
+import android.text.Spannable;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Stand-in for the Android class of the same name. It keeps the text it is given, going through
+ * its editable factory like the real one, and requests a layout on every setText().
+ */
+public class TextView extends View {
+
+    public enum BufferType {
+        NORMAL, SPANNABLE, EDITABLE
+    }
+
+    private CharSequence mText = "";
+    private BufferType mBufferType = BufferType.NORMAL;
+    private Editable.Factory mEditableFactory = Editable.Factory.getInstance();
+    private float mTextSize = 42;  // same as the paint's
+    private ColorStateList mTextColor = new ColorStateList(Color.BLACK);
+    private final TextPaint mPaint = new TextPaint();
+
+    public TextView(Context context) {
+        super(context);
+    }
+
+    public TextView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public TextView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    public final void setText(CharSequence text) {
+        setText(text, mBufferType);
+    }
+
+    public void setText(CharSequence text, BufferType type) {
+        if(type == BufferType.EDITABLE) {
+            mText = mEditableFactory.newEditable(text);
+        } else if(type == BufferType.SPANNABLE) {
+            mText = Spannable.Factory.getInstance().newSpannable(text);
+        } else {
+            mText = text.toString();
+        }
+        mBufferType = type;
+        requestLayout();
+        invalidate();
+    }
+
+    public CharSequence getText() {
+        return mText;
+    }
+
+    public final void setEditableFactory(Editable.Factory factory) {
+        mEditableFactory = factory;
+    }
+
+    public Layout getLayout() {
+        return new StaticLayout(mText, mPaint, getWidth(), Layout.Alignment.ALIGN_NORMAL, 1f, 0f,
+                true);
+    }
+
+    public int getCompoundPaddingLeft() {
+        return 0;
+    }
+
+    public int getCompoundPaddingRight() {
+        return 0;
+    }
+
+    public TextPaint getPaint() {
+        return mPaint;
+    }
+
+    public float getTextSize() {
+        return mTextSize;
+    }
+
+    public void setTextSize(float size) {
+        mTextSize = size;
+        mPaint.setTextSize(size);
+    }
+
+    public final ColorStateList getTextColors() {
+        return mTextColor;
+    }
+
+    public final int getCurrentTextColor() {
+        return mTextColor.getDefaultColor();
+    }
+
+    public void setTextColor(int color) {
+        mTextColor = new ColorStateList(color);
+    }
+}
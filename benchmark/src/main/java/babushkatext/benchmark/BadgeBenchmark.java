@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext.benchmark;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Typeface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import babushkatext.BabushkaBadge;
+import babushkatext.BabushkaText;
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * Updating the score of a rating badge, shown by a BabushkaText or drawn by a BabushkaBadge.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BadgeBenchmark {
+
+    private static final String[] SCORES = {"  9.5  ", "  9.4  ", "  10  ", "  8.7  "};
+
+    private BabushkaText mText;
+    private Piece mTextScore;
+    private BabushkaBadge mBadge;
+    private Piece mBadgeScore;
+    private Canvas mCanvas;
+    private int mUpdate;
+
+    @Setup
+    public void setUp() {
+        Context context = new Context();
+
+        mText = new BabushkaText(context);
+        mTextScore = createScore();
+        mText.addPiece(mTextScore);
+        mText.addPiece(createLabel());
+        mText.display();
+
+        mBadge = new BabushkaBadge(context);
+        mBadgeScore = createScore();
+        mBadge.addPiece(mBadgeScore);
+        mBadge.addPiece(createLabel());
+        mBadge.display();
+
+        mCanvas = new Canvas();
+    }
+
+    @Benchmark
+    public CharSequence text() {
+        mTextScore.setText(SCORES[mUpdate++ & 3]);
+        mText.display();
+        return mText.getText();
+    }
+
+    @Benchmark
+    public Canvas badge() {
+        mBadgeScore.setText(SCORES[mUpdate++ & 3]);
+        mBadge.display();
+        mBadge.draw(mCanvas);
+        return mCanvas;
+    }
+
+    private static Piece createScore() {
+        return new Piece.Builder(SCORES[0])
+                .textColor(Color.WHITE)
+                .backgroundColor(Color.parseColor("#073680"))
+                .build();
+    }
+
+    private static Piece createLabel() {
+        return new Piece.Builder(" excellent! ")
+                .textColor(Color.parseColor("#073680"))
+                .backgroundColor(Color.parseColor("#DFF1FE"))
+                .style(Typeface.BOLD)
+                .build();
+    }
+}
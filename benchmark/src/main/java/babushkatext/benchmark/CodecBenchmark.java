@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext.benchmark;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import babushkatext.BabushkaText;
+import babushkatext.BabushkaText.Piece;
+import babushkatext.PieceCodec;
+
+/**
+ * Showing Pieces received from a server in the PieceCodec format: decoded into Pieces and
+ * displayed, or bound straight from the buffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"6", "60", "600"})
+    public int pieceCount;
+
+    private BabushkaText mView;
+    private byte[] mEncoded;
+
+    @Setup
+    public void setUp() {
+        mView = new BabushkaText(new Context());
+        mEncoded = PieceCodec.encode(SamplePieces.create(pieceCount));
+    }
+
+    @Benchmark
+    public CharSequence decode() {
+        List<Piece> pieces = PieceCodec.decode(ByteBuffer.wrap(mEncoded));
+        mView.reset();
+        for(int i = 0; i < pieces.size(); i++) {
+            mView.addPiece(pieces.get(i));
+        }
+        mView.display();
+        return mView.getText();
+    }
+
+    @Benchmark
+    public CharSequence bind() {
+        mView.bind(ByteBuffer.wrap(mEncoded));
+        return mView.getText();
+    }
+}
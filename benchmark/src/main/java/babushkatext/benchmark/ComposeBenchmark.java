@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext.benchmark;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import babushkatext.BabushkaText;
+import babushkatext.BabushkaText.Piece;
+import babushkatext.Composer;
+import babushkatext.Composition;
+import babushkatext.SpannableAdapter;
+
+/**
+ * Composing a whole list of Pieces: the plain Java stage alone, with the spans applied, and the
+ * full rebuild done by display().
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ComposeBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int pieceCount;
+
+    private List<Piece> mPieces;
+    private Composer mComposer;
+    private BabushkaText mView;
+
+    @Setup
+    public void setUp() {
+        mPieces = SamplePieces.create(pieceCount);
+        mComposer = new Composer();
+
+        mView = new BabushkaText(new Context());
+        for(Piece aPiece : mPieces) {
+            mView.addPiece(aPiece);
+        }
+        mView.display();
+    }
+
+    @Benchmark
+    public Composition compose() {
+        return mComposer.compose(mPieces);
+    }
+
+    @Benchmark
+    public CharSequence composeToSpannable() {
+        return SpannableAdapter.toSpannable(mComposer.compose(mPieces));
+    }
+
+    @Benchmark
+    public CharSequence display() {
+        // replacing a Piece forces display() down its full rebuild path
+        mView.replacePieceAt(0, mView.getPiece(0));
+        mView.display();
+        return mView.getText();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext.benchmark;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import babushkatext.BabushkaText;
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * Typing a search query over a long text, highlighting the matches of each keystroke.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HighlightBenchmark {
+
+    private static final String[] KEYSTROKES = {"y", "yo", "yor", "york"};
+
+    @Param({"100", "1000", "10000"})
+    public int pieceCount;
+
+    private BabushkaText mView;
+    private int mUpdate;
+
+    @Setup
+    public void setUp() {
+        mView = new BabushkaText(new Context());
+        for(Piece aPiece : SamplePieces.create(pieceCount)) {
+            mView.addPiece(aPiece);
+        }
+        mView.display();
+        mView.highlight(KEYSTROKES[0]);
+    }
+
+    @Benchmark
+    public int highlight() {
+        return mView.highlight(KEYSTROKES[mUpdate++ & 3]);
+    }
+}
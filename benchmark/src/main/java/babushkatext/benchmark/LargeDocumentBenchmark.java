@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext.benchmark;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import babushkatext.BabushkaText;
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * Editing the middle of a long BabushkaText, with and without the large document mode.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LargeDocumentBenchmark {
+
+    private static final String[] LINES = {"connected\n", "disconnected\n"};
+
+    @Param({"1000", "10000"})
+    public int pieceCount;
+
+    @Param({"false", "true"})
+    public boolean largeDocument;
+
+    private BabushkaText mView;
+    private Piece mMiddle;
+    private int mUpdate;
+
+    @Setup
+    public void setUp() {
+        mView = new BabushkaText(new Context());
+        mView.setLargeDocumentMode(largeDocument);
+        for(Piece aPiece : SamplePieces.create(pieceCount)) {
+            mView.addPiece(aPiece);
+        }
+        mView.display();
+        mMiddle = mView.getPiece(pieceCount / 2);
+    }
+
+    @Benchmark
+    public CharSequence setText() {
+        mMiddle.setText(LINES[mUpdate++ & 1]);
+        mView.display();
+        return mView.getText();
+    }
+
+    @Benchmark
+    public CharSequence insertAndRemove() {
+        mView.addPiece(new Piece.Builder(LINES[mUpdate++ & 1]).build(), pieceCount / 2);
+        mView.display();
+        mView.removePiece(pieceCount / 2);
+        mView.display();
+        return mView.getText();
+    }
+}
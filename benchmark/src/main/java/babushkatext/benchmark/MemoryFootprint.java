@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import babushkatext.BabushkaText.Piece;
+import babushkatext.PackedPieces;
+
+/**
+ * Compares the heap taken by 1,000 Pieces held as Piece objects and as {@link PackedPieces}.
+ * Heap usage isn't something JMH measures, so this is a plain program, run with
+ *
+ *     ./gradlew :benchmark:footprint
+ *
+ * Each Piece gets a text of its own, as if it came from the network, rather than sharing the
+ * literals of the sample.
+ */
+public final class MemoryFootprint {
+
+    private static final int PIECE_COUNT = 1000;
+
+    // enough copies for the measure to dwarf the noise of the heap
+    private static final int COPIES = 200;
+
+    private MemoryFootprint() {
+    }
+
+    public static void main(String[] args) {
+        // once to load the classes, then for real
+        for(int round = 0; round < 2; round++) {
+            long pieces = measure(false);
+            long packed = measure(true);
+            if(round == 1) {
+                System.out.printf("Piece objects: %,d bytes per %,d Pieces%n", pieces, PIECE_COUNT);
+                System.out.printf("PackedPieces:  %,d bytes per %,d Pieces (%.1fx smaller)%n",
+                        packed, PIECE_COUNT, (double) pieces / packed);
+            }
+        }
+    }
+
+    /**
+     * @return the bytes retained by one copy of the Pieces
+     */
+    private static long measure(boolean packed) {
+        List<Object> copies = new ArrayList<>(COPIES);
+        long before = usedHeap();
+        for(int i = 0; i < COPIES; i++) {
+            List<Piece> pieces = createPieces();
+            copies.add(packed ? PackedPieces.of(pieces) : pieces);
+        }
+        long after = usedHeap();
+        if(copies.size() != COPIES) {
+            throw new AssertionError();
+        }
+        return (after - before) / COPIES;
+    }
+
+    private static List<Piece> createPieces() {
+        List<Piece> pieces = new ArrayList<>(PIECE_COUNT);
+        for(int i = 0; i < PIECE_COUNT; i++) {
+            Piece sample = SamplePieces.createPiece(i);
+            String text = new String(sample.getText().toString().toCharArray());
+            pieces.add(new Piece.Builder(text)
+                    .textColor(sample.getTextColor())
+                    .backgroundColor(sample.getBackgroundColor())
+                    .textSizeRelative(sample.getTextSizeRelative())
+                    .style(sample.getStyle())
+                    .build());
+        }
+        return pieces;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext.benchmark;
+
+import android.graphics.Color;
+import android.graphics.Typeface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import babushkatext.BabushkaText.Piece;
+
+/**
+ * Pieces styled like the hotel cards of the example app, repeated to any length.
+ */
+final class SamplePieces {
+
+    private static final int DARK_GREY = Color.parseColor("#414141");
+    private static final int BLUE = Color.parseColor("#0081E2");
+    private static final int GREY = Color.parseColor("#969696");
+    private static final int ORANGE = Color.parseColor("#F7B53F");
+    private static final int LIGHT_GREY = Color.parseColor("#F5F5F5");
+
+    private SamplePieces() {
+    }
+
+    static List<Piece> create(int count) {
+        List<Piece> pieces = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            pieces.add(createPiece(i));
+        }
+        return pieces;
+    }
+
+    static Piece createPiece(int index) {
+        switch(index % 6) {
+            case 0:
+                return new Piece.Builder("The Bryant Park Hotel\n")
+                        .textColor(DARK_GREY)
+                        .build();
+            case 1:
+                return new Piece.Builder("#6 of 434 ")
+                        .textColor(BLUE)
+                        .build();
+            case 2:
+                return new Piece.Builder("in New York City\n")
+                        .textColor(GREY)
+                        .build();
+            case 3:
+                return new Piece.Builder("2487 reviews\n")
+                        .textColor(GREY)
+                        .textSizeRelative(0.9f)
+                        .build();
+            case 4:
+                return new Piece.Builder("$540")
+                        .textColor(ORANGE)
+                        .style(Typeface.BOLD)
+                        .build();
+            default:
+                return new Piece.Builder(" per night\n")
+                        .textColor(GREY)
+                        .backgroundColor(LIGHT_GREY)
+                        .build();
+        }
+    }
+}
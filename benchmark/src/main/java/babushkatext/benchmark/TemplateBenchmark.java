@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext.benchmark;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import babushkatext.BabushkaText;
+import babushkatext.BabushkaText.Piece;
+import babushkatext.PieceTemplate;
+
+/**
+ * Filling a recycled view with the next hotel card, through Piece builders and display() or by
+ * binding a template of the card.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TemplateBenchmark {
+
+    // the same card as SamplePieces
+    private static final String CARD = "[#414141]{name}\n"
+            + "[#0081E2]#{rank} of {count} "
+            + "[#969696]in {city}\n"
+            + "[#969696 0.9x]{reviews} reviews\n"
+            + "[#F7B53F bold]${price}"
+            + "[#969696 bg#FFFFFF] per night\n";
+
+    private static final String[][] HOTELS = {
+            {"The Bryant Park Hotel", "6", "434", "New York City", "2487", "540"},
+            {"The Plaza", "12", "434", "New York City", "3102", "895"},
+    };
+
+    private BabushkaText mView;
+    private PieceTemplate mTemplate;
+    private int mUpdate;
+
+    @Setup
+    public void setUp() {
+        mView = new BabushkaText(new Context());
+        mTemplate = PieceTemplate.compile(CARD);
+    }
+
+    @Benchmark
+    public CharSequence builders() {
+        String[] hotel = HOTELS[mUpdate++ & 1];
+        mView.reset();
+        for(int i = 0; i < 6; i++) {
+            Piece sample = SamplePieces.createPiece(i);
+            mView.addPiece(new Piece.Builder(text(i, hotel))
+                    .textColor(sample.getTextColor())
+                    .backgroundColor(sample.getBackgroundColor())
+                    .textSizeRelative(sample.getTextSizeRelative())
+                    .style(sample.getStyle())
+                    .build());
+        }
+        mView.display();
+        return mView.getText();
+    }
+
+    @Benchmark
+    public CharSequence bind() {
+        String[] hotel = HOTELS[mUpdate++ & 1];
+        mView.bind(mTemplate, hotel);
+        return mView.getText();
+    }
+
+    private static String text(int piece, String[] hotel) {
+        switch(piece) {
+            case 0:
+                return hotel[0] + "\n";
+            case 1:
+                return "#" + hotel[1] + " of " + hotel[2] + " ";
+            case 2:
+                return "in " + hotel[3] + "\n";
+            case 3:
+                return hotel[4] + " reviews\n";
+            case 4:
+                return "$" + hotel[5];
+            default:
+                return " per night\n";
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2014 Henrique Boregio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Henrique Boregio (hboregio@gmail.com)
+ */
+package babushkatext.benchmark;
+
+import android.content.Context;
+import android.graphics.Color;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import babushkatext.BabushkaText;
+import babushkatext.BabushkaText.Piece;
+import babushkatext.NumberText;
+
+/**
+ * Updating an already displayed BabushkaText: the text of a single Piece, the value of a numeric
+ * Piece, or the color of all.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UpdateBenchmark {
+
+    private static final String[] PRICES = {"$540", "$539", "$1,024", "$98"};
+    private static final int[] COLORS = {Color.BLACK, Color.WHITE};
+
+    @Param({"1", "10", "100", "1000"})
+    public int pieceCount;
+
+    private BabushkaText mView;
+    private Piece mPrice;
+    private NumberText mReviews;
+    private int mUpdate;
+
+    @Setup
+    public void setUp() {
+        mView = new BabushkaText(new Context());
+        for(Piece aPiece : SamplePieces.create(pieceCount)) {
+            mView.addPiece(aPiece);
+        }
+        mReviews = new NumberText().grouping(',');
+        mView.addPiece(new Piece.Builder(mReviews).build(), pieceCount / 2);
+        mView.display();
+
+        // the Piece in the middle, so edits have text and spans on both sides
+        mPrice = mView.getPiece(pieceCount / 2);
+    }
+
+    @Benchmark
+    public CharSequence setText() {
+        mPrice.setText(PRICES[mUpdate++ & 3]);
+        mView.display();
+        return mView.getText();
+    }
+
+    @Benchmark
+    public CharSequence setNumber() {
+        mReviews.setValue(2487 + (mUpdate++ & 1023));
+        mView.display();
+        return mView.getText();
+    }
+
+    @Benchmark
+    public CharSequence changeTextColor() {
+        mView.changeTextColor(COLORS[mUpdate++ & 1]);
+        return mView.getText();
+    }
+}